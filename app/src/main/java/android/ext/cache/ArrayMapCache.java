@@ -13,6 +13,7 @@ import java.util.Set;
  */
 public final class ArrayMapCache<K, V> implements Cache<K, V> {
     private final ArrayMap<K, V> map;
+    private StatsCounter stats;
 
     /**
      * Constructor
@@ -51,14 +52,37 @@ public final class ArrayMapCache<K, V> implements Cache<K, V> {
 
     @Override
     public V get(K key) {
-        return map.get(key);
+        final V value = map.get(key);
+        if (stats != null) {
+            if (value != null) {
+                stats.recordHit();
+            } else {
+                stats.recordMiss();
+            }
+        }
+
+        return value;
     }
 
     @Override
     public V put(K key, V value) {
+        if (stats != null) {
+            stats.recordPut(1);
+        }
+
         return map.put(key, value);
     }
 
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        stats = counter;
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return stats;
+    }
+
     /**
      * Returns the key at the given <em>index</em> in this cache.
      * @param index The index, must be between 0 and {@link #size()} - 1.
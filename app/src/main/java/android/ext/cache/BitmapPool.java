@@ -12,6 +12,17 @@ public interface BitmapPool {
      */
     void clear();
 
+    /**
+     * Trim this pool to the appropriate level. Typically called on the
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}. The
+     * default implementation removes all bitmaps from this pool.
+     * @param level The integer represents a trim level as specified in
+     * {@link android.content.ComponentCallbacks2}.
+     */
+    default void trimMemory(int level) {
+        clear();
+    }
+
     /**
      * Retrieves and removes the <tt>Bitmap</tt> from this pool whose
      * allocation bytes greater than or equal to the given the size.
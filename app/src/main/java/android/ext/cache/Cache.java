@@ -2,6 +2,10 @@ package android.ext.cache;
 
 import android.content.Context;
 import android.util.Printer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A <tt>Cache</tt> is a data structure consisting of a set
@@ -47,6 +51,55 @@ public interface Cache<K, V> {
     default void trimMemory(int level) {
     }
 
+    /**
+     * Sets the {@link StatsCounter} to record the statistics of this cache. The
+     * default implementation do nothing. <p>Note: This method should be invoked
+     * before this cache is used.</p>
+     * @param counter May be <tt>null</tt>. The <tt>StatsCounter</tt> to record
+     * or <tt>null</tt> to disable the recording.
+     * @see #getStatsCounter()
+     */
+    default void setStatsCounter(StatsCounter counter) {
+    }
+
+    /**
+     * Returns the {@link StatsCounter} associated with this cache. The default
+     * implementation returns <tt>null</tt>.
+     * @return The <tt>StatsCounter</tt> or <tt>null</tt> if this cache is not
+     * recording statistics.
+     * @see #setStatsCounter(StatsCounter)
+     */
+    default StatsCounter getStatsCounter() {
+        return null;
+    }
+
+    /**
+     * Returns a copy of the current contents of this cache. The iteration order is from
+     * least recently accessed to most recently accessed, if this cache maintains an
+     * access order. The default implementation returns an empty <tt>Map</tt>.
+     * @return A copy of this cache.
+     */
+    default Map<K, V> snapshot() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Returns the keys of this cache in the order of value, the most valuable key first.
+     * For an LRU cache it is the most recently accessed key first. The default implementation
+     * returns the keys of the {@link #snapshot()} in reverse order.
+     * @param maxCount The maximum number of keys to return.
+     * @return A <tt>List</tt> of the keys.
+     */
+    default List<K> hotKeys(int maxCount) {
+        final Object[] keys = snapshot().keySet().toArray();
+        final List<K> result = new ArrayList<K>(Math.min(keys.length, maxCount));
+        for (int i = keys.length - 1; i >= 0 && result.size() < maxCount; --i) {
+            result.add((K)keys[i]);
+        }
+
+        return result;
+    }
+
     public static void dumpCache(Context context, Printer printer, Cache<?, ?> cache) {
         if (cache instanceof ArrayMapCache) {
             ((ArrayMapCache<?, ?>)cache).dump(printer);
@@ -56,6 +109,21 @@ public interface Cache<K, V> {
             ((SimpleLruCache<?, ?>)cache).dump(context, printer);
         } else if (cache instanceof LruImageCache) {
             ((LruImageCache<?>)cache).dump(context, printer);
+        } else if (cache instanceof TinyLfuCache) {
+            ((TinyLfuCache<?, ?>)cache).dump(context, printer);
+        } else if (cache instanceof ConcurrentLruCache) {
+            ((ConcurrentLruCache<?, ?>)cache).dump(context, printer);
+        } else if (cache instanceof IntLruCache) {
+            ((IntLruCache<?>)cache).dump(context, printer);
+        } else if (cache instanceof ReferenceCache) {
+            ((ReferenceCache<?, ?>)cache).dump(context, printer);
+        } else if (cache instanceof ExpiringLruCache) {
+            ((ExpiringLruCache<?, ?>)cache).dump(context, printer);
+        }
+
+        final StatsCounter counter = (cache != null ? cache.getStatsCounter() : null);
+        if (counter != null) {
+            counter.snapshot().dump(printer);
         }
     }
 }
@@ -0,0 +1,203 @@
+package android.ext.cache;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import static android.content.Context.ACTIVITY_SERVICE;
+import android.app.ActivityManager;
+import android.app.ActivityManager.MemoryInfo;
+import android.content.Context;
+import android.ext.util.DebugUtils;
+import android.ext.util.DeviceUtils;
+import android.ext.util.FileUtils;
+import android.ext.widget.UIHandler;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.UiThread;
+import android.util.Printer;
+
+/**
+ * Class <tt>CacheSizeController</tt> adjusts the maximum size of a {@link SimpleLruCache}
+ * or a {@link ConcurrentLruCache} in bytes between a lower and an upper bound. While the
+ * application is in the foreground, the controller checks the memory headroom periodically,
+ * grows the cache when the headroom is above the high watermark and shrinks it when the
+ * headroom is below the low watermark, the sizes between the watermarks are kept. Before
+ * Android O the headroom is the free Java heap, the bitmap pixels are allocated in it. On
+ * Android O and later the pixels are allocated in the native heap, which is bounded by the
+ * memory of the device, so the headroom is the available memory of the system above the
+ * low memory threshold. The
+ * {@link #onTrimMemory} shrinks the cache gradually by the trim level, and the cache is
+ * not grown until the memory pressure has subsided for a while.
+ * <h3>Usage</h3>
+ * <p>Here is an example:</p><pre>
+ * final CacheSizeController controller = new CacheSizeController(context, bitmapCache, minSize, maxSize);
+ * controller.schedule();</pre>
+ * @author Garfield
+ */
+public final class CacheSizeController implements Runnable {
+    private static final int MAX_HISTORY_SIZE = 32;
+    private static final long CHECK_INTERVAL  = 10000;
+    private static final long RECOVERY_TIME   = 60000;
+    private static final float LOW_WATERMARK  = 0.15f;
+    private static final float HIGH_WATERMARK = 0.35f;
+
+    private final Cache<?, ?> mCache;
+    private final int mMinSize;
+    private final int mMaxSize;
+    private final int mStepSize;
+    private final MemoryInfo mMemoryInfo;
+    private final ActivityManager mActivityManager;
+
+    private int mSize;
+    private int mResizeCount;
+    private long mLastTrimTime;
+    private boolean mScheduled;
+
+    private int mHistoryCount;
+    private final int[] mHistorySizes;
+    private final long[] mHistoryTimes;
+
+    /**
+     * Constructor
+     * @param context The <tt>Context</tt>.
+     * @param cache The {@link SimpleLruCache} or {@link ConcurrentLruCache} to resize.
+     * The current maximum size of the <em>cache</em> is the initial size.
+     * @param minSize The minimum size of the <em>cache</em> in bytes.
+     * @param maxSize The maximum size of the <em>cache</em> in bytes.
+     */
+    public CacheSizeController(Context context, Cache<?, ?> cache, int minSize, int maxSize) {
+        DebugUtils.__checkError(!(cache instanceof SimpleLruCache) && !(cache instanceof ConcurrentLruCache), "Invalid parameter - cache must be a SimpleLruCache or ConcurrentLruCache");
+        DebugUtils.__checkError(minSize <= 0 || minSize > maxSize, "Invalid parameters - minSize(" + minSize + ") <= 0 || minSize > maxSize(" + maxSize + ")");
+        mCache = cache;
+        mMinSize = minSize;
+        mMaxSize = maxSize;
+        mStepSize = Math.max((maxSize - minSize) / 8, 1);
+        mSize = (cache instanceof SimpleLruCache ? ((SimpleLruCache<?, ?>)cache).maxSize() : ((ConcurrentLruCache<?, ?>)cache).maxSize());
+        mHistorySizes = new int[MAX_HISTORY_SIZE];
+        mHistoryTimes = new long[MAX_HISTORY_SIZE];
+        mMemoryInfo = (Build.VERSION.SDK_INT >= 26 ? new MemoryInfo() : null);
+        mActivityManager = (Build.VERSION.SDK_INT >= 26 ? (ActivityManager)context.getSystemService(ACTIVITY_SERVICE) : null);
+        resize(mSize);
+    }
+
+    /**
+     * Returns the current maximum size of the cache in bytes.
+     * @return The current maximum size.
+     */
+    public final int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of times the cache has been resized.
+     * @return The number of resizes.
+     */
+    public final int getResizeCount() {
+        return mResizeCount;
+    }
+
+    /**
+     * Schedules the periodic check of the heap headroom, if it is not
+     * scheduled. Typically called when the application starts to load
+     * images. <p><b>Note: This method must be invoked on the UI thread.</b></p>
+     */
+    @UiThread
+    public final void schedule() {
+        if (!mScheduled) {
+            mScheduled = true;
+            UIHandler.sInstance.postDelayed(this, CHECK_INTERVAL);
+        }
+    }
+
+    /**
+     * Shrinks the cache by the trim level. <p><b>Note: This method must be
+     * invoked on the UI thread.</b></p>
+     * @param level The integer represents a trim level as specified in
+     * {@link android.content.ComponentCallbacks2}.
+     */
+    @UiThread
+    public void onTrimMemory(int level) {
+        mLastTrimTime = SystemClock.uptimeMillis();
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // The app's UI is no longer visible, stop the periodic check.
+            mScheduled = false;
+            UIHandler.sInstance.removeCallbacks(this);
+        }
+
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // Entering list of cached background apps, shrink to the minimum size.
+            resize(mMinSize);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            resize(mSize / 2);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            resize(mSize * 3 / 4);
+        } else {
+            resize(mSize - mStepSize);
+        }
+    }
+
+    @Override
+    public void run() {
+        final float headroom = computeHeadroom();
+        if (headroom < LOW_WATERMARK) {
+            resize(mSize - mStepSize);
+        } else if (headroom > HIGH_WATERMARK && SystemClock.uptimeMillis() - mLastTrimTime >= RECOVERY_TIME) {
+            // The memory pressure has subsided, grow the cache.
+            resize(mSize + mStepSize);
+        }
+
+        UIHandler.sInstance.postDelayed(this, CHECK_INTERVAL);
+    }
+
+    public final void dump(Printer printer) {
+        final StringBuilder result = new StringBuilder(130);
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ size = %s, minSize = %s, maxSize = %s, resizes = %d ] ", getClass().getSimpleName(), FileUtils.formatFileSize(mSize), FileUtils.formatFileSize(mMinSize), FileUtils.formatFileSize(mMaxSize), mResizeCount);
+
+        final long now = SystemClock.uptimeMillis();
+        final int count = Math.min(mHistoryCount, MAX_HISTORY_SIZE);
+        for (int i = mHistoryCount - count; i < mHistoryCount; ++i) {
+            final int index = i % MAX_HISTORY_SIZE;
+            result.setLength(0);
+            printer.println(result.append("  ").append((now - mHistoryTimes[index]) / 1000).append("s ago ==> ").append(FileUtils.formatFileSize(mHistorySizes[index])).toString());
+        }
+    }
+
+    /**
+     * Returns the ratio of the memory headroom, in the heap which the bitmap pixels are allocated.
+     */
+    private float computeHeadroom() {
+        if (mActivityManager != null) {
+            // The bitmap pixels are allocated in the native heap, checks the available memory of the system.
+            mActivityManager.getMemoryInfo(mMemoryInfo);
+            return (mMemoryInfo.lowMemory ? 0 : (float)(mMemoryInfo.availMem - mMemoryInfo.threshold) / mMemoryInfo.totalMem);
+        }
+
+        final Runtime runtime = Runtime.getRuntime();
+        final long maxMemory = runtime.maxMemory();
+        return (float)(maxMemory - runtime.totalMemory() + runtime.freeMemory()) / maxMemory;
+    }
+
+    /**
+     * Resizes the cache to the <em>size</em>, clamped to the range [minSize, maxSize].
+     */
+    private void resize(int size) {
+        final int newSize = Math.min(Math.max(size, mMinSize), mMaxSize);
+        if (newSize == mSize && mHistoryCount > 0) {
+            return;
+        }
+
+        if (mCache instanceof SimpleLruCache) {
+            ((SimpleLruCache<?, ?>)mCache).resize(newSize);
+        } else {
+            ((ConcurrentLruCache<?, ?>)mCache).resize(newSize);
+        }
+
+        // Records the resize history.
+        final int index = mHistoryCount++ % MAX_HISTORY_SIZE;
+        mHistorySizes[index] = newSize;
+        mHistoryTimes[index] = SystemClock.uptimeMillis();
+        mSize = newSize;
+        ++mResizeCount;
+    }
+}
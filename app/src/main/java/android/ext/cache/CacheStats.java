@@ -0,0 +1,120 @@
+package android.ext.cache;
+
+import android.ext.util.LatencyHistogram;
+import android.util.Printer;
+
+/**
+ * Class <tt>CacheStats</tt> is an immutable snapshot of the statistics of a {@link Cache}.
+ * @author Garfield
+ * @see StatsCounter#snapshot()
+ */
+public final class CacheStats {
+    /**
+     * The number of times the cache lookup returned a value.
+     */
+    public final long hitCount;
+
+    /**
+     * The number of times the cache lookup returned <tt>null</tt>.
+     */
+    public final long missCount;
+
+    /**
+     * The number of values added to the cache.
+     */
+    public final long putCount;
+
+    /**
+     * The sum of the sizes of the values added to the cache, in the cache's units.
+     */
+    public final long putSize;
+
+    /**
+     * The number of values evicted from the cache.
+     */
+    public final long evictionCount;
+
+    /**
+     * The sum of the sizes of the values evicted from the cache, in the cache's units.
+     */
+    public final long evictionSize;
+
+    /**
+     * The total time spent to load the missing values, in nanoseconds.
+     */
+    public final long totalLoadTime;
+
+    /**
+     * The number of loads in each bucket of the {@link LatencyHistogram}.
+     */
+    private final long[] mLoadTimes;
+
+    /**
+     * Constructor
+     */
+    /* package */ CacheStats(long hitCount, long missCount, long putCount, long putSize, long evictionCount, long evictionSize, long[] loadTimes, long totalLoadTime) {
+        this.hitCount  = hitCount;
+        this.missCount = missCount;
+        this.putCount  = putCount;
+        this.putSize   = putSize;
+        this.evictionCount = evictionCount;
+        this.evictionSize  = evictionSize;
+        this.totalLoadTime = totalLoadTime;
+        this.mLoadTimes = loadTimes;
+    }
+
+    /**
+     * Returns the number of times the cache lookup methods have returned
+     * either a cached or missing value.
+     * @return The number of requests.
+     */
+    public final long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Returns the ratio of the cache requests which were hits.
+     * @return The hit rate in range [0 - 1.0], or <tt>1.0</tt> if
+     * {@link #requestCount()} is <tt>0</tt>.
+     */
+    public final double hitRate() {
+        final long requestCount = hitCount + missCount;
+        return (requestCount == 0 ? 1.0 : (double)hitCount / requestCount);
+    }
+
+    /**
+     * Returns the number of the recorded loads.
+     * @return The number of loads.
+     */
+    public final long loadCount() {
+        return LatencyHistogram.count(mLoadTimes);
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of the specified <em>percentile</em> of the load time.
+     * @param percentile The percentile in range [0 - 1.0].
+     * @return The load time in milliseconds.
+     * @see LatencyHistogram#percentile(long[], float)
+     */
+    public final long loadTimePercentile(float percentile) {
+        return LatencyHistogram.percentile(mLoadTimes, percentile);
+    }
+
+    public final void dump(Printer printer) {
+        final StringBuilder result = new StringBuilder(200)
+            .append("  stats [ hits = ").append(hitCount)
+            .append(", misses = ").append(missCount)
+            .append(", hitRate = ").append((int)(hitRate() * 100)).append('%')
+            .append(", puts = ").append(putCount)
+            .append(", putSize = ").append(putSize)
+            .append(", evictions = ").append(evictionCount)
+            .append(", evictionSize = ").append(evictionSize)
+            .append(" ]");
+        printer.println(result.toString());
+
+        if (loadCount() > 0) {
+            result.setLength(0);
+            printer.println(LatencyHistogram.toString(result.append("  load "), mLoadTimes, totalLoadTime).toString());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package android.ext.cache;
+
+import android.content.Context;
+import android.ext.util.DebugUtils;
+import android.ext.util.DeviceUtils;
+import android.ext.util.Pools.Factory;
+import android.util.Printer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class <tt>ConcurrentLruCache</tt> is an implementation of a {@link Cache}.
+ * This class splits the keys across a fixed number of independent {@link LruCache}
+ * segments, each segment has its own lock, so the threads access the different
+ * segments never contend with each other. The eviction order is LRU per segment.
+ * <h3>Usage</h3>
+ * <p>Here is an example:</p><pre>
+ * final int concurrencyLevel = 4;
+ * final Cache&lt;Object, Bitmap&gt; cache = new ConcurrentLruCache&lt;Object, Bitmap&gt;(concurrencyLevel,
+ *     () -> new LruBitmapCache2&lt;Object&gt;(maxSize / concurrencyLevel, bitmapPool));</pre>
+ * @author Garfield
+ */
+public final class ConcurrentLruCache<K, V> implements Cache<K, V> {
+    private final int mMask;
+    private final LruCache<K, V>[] mSegments;
+
+    /**
+     * Constructor
+     * @param concurrencyLevel The number of segments, will be rounded up to a power of 2.
+     * @param factory The {@link Factory} to create the {@link LruCache} of each segment.
+     * The <tt>LruCache</tt> decides the <tt>sizeOf</tt> and <tt>entryRemoved</tt> behaviors.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(int concurrencyLevel, Factory<LruCache<K, V>> factory) {
+        DebugUtils.__checkError(concurrencyLevel <= 0 || factory == null, "Invalid parameters - concurrencyLevel(" + concurrencyLevel + ") <= 0 || factory == null");
+        final int size = (concurrencyLevel > 1 ? Integer.highestOneBit(concurrencyLevel - 1) << 1 : 1);
+        mMask = size - 1;
+        mSegments = new LruCache[size];
+        for (int i = 0; i < size; ++i) {
+            mSegments[i] = factory.newInstance();
+        }
+    }
+
+    /**
+     * Returns the number of segments in this cache.
+     * @return The number of segments.
+     */
+    public final int getSegmentCount() {
+        return mSegments.length;
+    }
+
+    /**
+     * Returns the sum of the maximum sizes of all segments in this cache.
+     * @return The maximum size.
+     * @see #size()
+     */
+    public final int maxSize() {
+        int result = 0;
+        for (LruCache<K, V> segment : mSegments) {
+            result += segment.maxSize();
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the maximum size of this cache, the <em>maxSize</em> is split evenly across
+     * all segments. The eldest entries of each segment will be evicted to fit.
+     * @param maxSize The new maximum size, must be greater than or equal to the number
+     * of segments.
+     * @see #maxSize()
+     */
+    public final void resize(int maxSize) {
+        DebugUtils.__checkError(maxSize < mSegments.length, "Invalid parameter - maxSize(" + maxSize + ") must be >= " + mSegments.length);
+        final int segmentSize = maxSize / mSegments.length;
+        for (LruCache<K, V> segment : mSegments) {
+            segment.resize(segmentSize);
+        }
+    }
+
+    /**
+     * Returns the sum of the sizes of all segments in this cache.
+     * @return The size.
+     * @see #maxSize()
+     */
+    public final int size() {
+        int result = 0;
+        for (LruCache<K, V> segment : mSegments) {
+            result += segment.size();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        for (LruCache<K, V> segment : mSegments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        return segmentFor(key).remove(key);
+    }
+
+    @Override
+    public V get(K key) {
+        return segmentFor(key).get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return segmentFor(key).put(key, value);
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        for (LruCache<K, V> segment : mSegments) {
+            segment.trimMemory(level);
+        }
+    }
+
+    /**
+     * Sets the {@link StatsCounter} to all segments of this cache.
+     * @param counter May be <tt>null</tt>. The <tt>StatsCounter</tt>
+     * to record or <tt>null</tt> to disable the recording.
+     */
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        for (LruCache<K, V> segment : mSegments) {
+            segment.setStatsCounter(counter);
+        }
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return mSegments[0].getStatsCounter();
+    }
+
+    /**
+     * Returns a copy of the current contents of this cache.
+     * @return A copy of this cache.
+     */
+    @Override
+    public final Map<K, V> snapshot() {
+        final Map<K, V> result = new LinkedHashMap<K, V>();
+        for (LruCache<K, V> segment : mSegments) {
+            result.putAll(segment.snapshot());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the keys of this cache, the most recently accessed key first. The segments have
+     * no common access order, so the keys are taken from each segment in turn, ordered by the
+     * rank in its segment. The keys are spread evenly across the segments, so this order is
+     * close to the access order of this cache.
+     * @param maxCount The maximum number of keys to return.
+     * @return A <tt>List</tt> of the keys.
+     */
+    @Override
+    public final List<K> hotKeys(int maxCount) {
+        final List<K>[] segmentKeys = new List[mSegments.length];
+        int count = 0;
+        for (int i = 0; i < mSegments.length; ++i) {
+            count += (segmentKeys[i] = mSegments[i].hotKeys(maxCount)).size();
+        }
+
+        final List<K> result = new ArrayList<K>(Math.min(count, maxCount));
+        for (int rank = 0, added = 1; added > 0 && result.size() < maxCount; ++rank) {
+            added = 0;
+            for (int i = 0; i < segmentKeys.length && result.size() < maxCount; ++i) {
+                if (rank < segmentKeys[i].size()) {
+                    result.add(segmentKeys[i].get(rank));
+                    ++added;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public final void dump(Context context, Printer printer) {
+        final StringBuilder result = new StringBuilder(130);
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ segments = %d, size = %d, maxSize = %d ] ", getClass().getSimpleName(), mSegments.length, size(), maxSize());
+        for (LruCache<K, V> segment : mSegments) {
+            segment.dump(context, printer);
+        }
+    }
+
+    private LruCache<K, V> segmentFor(K key) {
+        if (key == null) {
+            throw new NullPointerException("Invalid parameter - key == null");
+        }
+
+        // Spreads the higher bits of hash to lower.
+        final int hash = key.hashCode();
+        return mSegments[(hash ^ (hash >>> 16)) & mMask];
+    }
+}
@@ -0,0 +1,507 @@
+package android.ext.cache;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import android.content.Context;
+import android.ext.content.AsyncTask;
+import android.ext.util.DebugUtils;
+import android.ext.util.DeviceUtils;
+import android.ext.widget.UIHandler;
+import android.os.SystemClock;
+import android.util.Printer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Like as {@link LruCache}, but each entry of this class has a time-to-live (expires
+ * after it was put) and/or a time-to-idle (expires after it was last accessed). The
+ * expired entries are removed lazily when they are read, and swept by a timer wheel
+ * on a background executor. The {@link #get} never allocates memory. This class is
+ * thread-safely. By default, this cache size is the number of entries. Overrides
+ * {@link #sizeOf} to size this cache in different units.
+ * @author Garfield
+ */
+public class ExpiringLruCache<K, V> implements Cache<K, V>, Runnable {
+    private static final int WHEEL_SIZE = 64;
+    private static final long MIN_TICK_MILLIS = 100;
+
+    private int mSize;
+    private long mLastTick;
+    private boolean mScheduled;
+    private StatsCounter mStats;
+
+    private final int mMaxSize;
+    private final long mTickMillis;
+    private final long mTimeToLive;
+    private final long mTimeToIdle;
+    private final Node<K, V>[] mWheel;
+    private final Runnable mSweepTrigger;
+    private final LinkedHashMap<K, Node<K, V>> mMap;
+
+    /**
+     * Constructor
+     * @param maxSize For caches that do not override {@link #sizeOf}, this is
+     * the maximum number of entries to allow in this cache. For all other caches,
+     * this is the maximum sum of the sizes of the entries to allow in this cache.
+     * @param timeToLive The time in milliseconds that each entry should expire
+     * after it was put, or <tt>0</tt> if the entries never expire after put.
+     * @param timeToIdle The time in milliseconds that each entry should expire
+     * after it was last accessed, or <tt>0</tt> if the entries never expire after
+     * access.
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiringLruCache(int maxSize, long timeToLive, long timeToIdle) {
+        DebugUtils.__checkError(maxSize <= 0 || timeToLive < 0 || timeToIdle < 0 || (timeToLive == 0 && timeToIdle == 0), "Invalid parameters - maxSize = " + maxSize + ", timeToLive = " + timeToLive + ", timeToIdle = " + timeToIdle);
+        mMaxSize = maxSize;
+        mTimeToLive = timeToLive;
+        mTimeToIdle = timeToIdle;
+        mTickMillis = Math.max(Math.min(timeToLive > 0 ? timeToLive : Long.MAX_VALUE, timeToIdle > 0 ? timeToIdle : Long.MAX_VALUE) / 16, MIN_TICK_MILLIS);
+        mWheel = new Node[WHEEL_SIZE];
+        mMap = new LinkedHashMap<K, Node<K, V>>(0, 0.75f, true);
+        mSweepTrigger = () -> AsyncTask.SERIAL_EXECUTOR.execute(this);
+        mLastTick = SystemClock.elapsedRealtime() / mTickMillis;
+    }
+
+    /**
+     * Returns the maximum size in this cache in user-defined units.
+     * @return The maximum size.
+     * @see #size()
+     */
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns
+     * the number of entries in the cache. For all other caches, this
+     * returns the sum of the sizes of the entries in this cache.
+     * @return The size.
+     */
+    public synchronized final int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the time-to-live in milliseconds of each entry in this cache.
+     * @return The time-to-live or <tt>0</tt> if the entries never expire after put.
+     */
+    public final long getTimeToLive() {
+        return mTimeToLive;
+    }
+
+    /**
+     * Returns the time-to-idle in milliseconds of each entry in this cache.
+     * @return The time-to-idle or <tt>0</tt> if the entries never expire after access.
+     */
+    public final long getTimeToIdle() {
+        return mTimeToIdle;
+    }
+
+    /**
+     * Returns the time in milliseconds elapsed since the value for the specified <em>key</em>
+     * was put into this cache. This method does not record the statistics, but the entry is
+     * moved to the head of the queue like as {@link #get}.
+     * @param key The key to find.
+     * @return The age of the value or <tt>-1</tt> if there was no mapping.
+     */
+    public synchronized long getAge(K key) {
+        final Node<K, V> node = mMap.get(key);
+        return (node != null ? SystemClock.elapsedRealtime() - node.writeTime : -1);
+    }
+
+    /**
+     * Clears this cache, but do not call {@link #entryRemoved} on each removed entry.
+     */
+    @Override
+    public synchronized void clear() {
+        mSize = 0;
+        mMap.clear();
+        Arrays.fill(mWheel, null);
+    }
+
+    @Override
+    public V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("Invalid parameter - key == null");
+        }
+
+        final Node<K, V> expired;
+        synchronized (this) {
+            final Node<K, V> node = mMap.get(key);
+            if (node == null) {
+                recordAccess(null);
+                return null;
+            }
+
+            final long now = SystemClock.elapsedRealtime();
+            if (node.expireTime(mTimeToLive, mTimeToIdle) > now) {
+                node.accessTime = now;
+                recordAccess(node.value);
+                return node.value;
+            }
+
+            // Removes the expired entry lazily.
+            expired = node;
+            mMap.remove(key);
+            removeNode(node);
+            if (mStats != null) {
+                mStats.recordMiss();
+                mStats.recordEviction(node.size);
+            }
+        }
+
+        entryRemoved(true, key, expired.value, null);
+        return null;
+    }
+
+    /**
+     * Maps the specified <em>key</em> to the specified <tt>value</tt>.
+     * The <tt>value</tt> is moved to the head of the queue.
+     * @param key The key.
+     * @param value The value.
+     * @return The previous value mapped by <em>key</em> or <tt>null</tt>
+     * if there was no mapping.
+     */
+    @Override
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Invalid parameters - key == null || value == null");
+        }
+
+        final Node<K, V> previous;
+        long sweepDelay = -1;
+        synchronized (this) {
+            final long now = SystemClock.elapsedRealtime();
+            final Node<K, V> node = new Node<K, V>(key, value, sizeOf(key, value), now);
+            DebugUtils.__checkError(node.size < 0, "Negative size: " + key + " = " + value);
+            if ((previous = mMap.put(key, node)) != null) {
+                removeNode(previous);
+            }
+
+            mSize += node.size;
+            link(node, bucketOf(node.expireTime(mTimeToLive, mTimeToIdle), mLastTick + 1));
+            if (mStats != null) {
+                mStats.recordPut(node.size);
+            }
+
+            if (!mScheduled) {
+                // This cache was empty, schedules the sweep when the new entry expires.
+                mScheduled  = true;
+                sweepDelay = node.expireTime(mTimeToLive, mTimeToIdle) - now;
+            }
+        }
+
+        if (sweepDelay >= 0) {
+            UIHandler.sInstance.postDelayed(mSweepTrigger, sweepDelay);
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous.value, value);
+        }
+
+        trimToSize(mMaxSize, false);
+        return (previous != null ? previous.value : null);
+    }
+
+    @Override
+    public V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("Invalid parameter - key == null");
+        }
+
+        final Node<K, V> previous;
+        synchronized (this) {
+            if ((previous = mMap.remove(key)) == null) {
+                return null;
+            }
+
+            removeNode(previous);
+        }
+
+        entryRemoved(false, key, previous.value, null);
+        return previous.value;
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // Entering list of cached background apps, clear this cache.
+            clear();
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // The app's UI is no longer visible, or app is in the foreground but system
+            // is running critically low on memory. Remove the oldest half of this cache.
+            trimToSize(mMaxSize / 2, true);
+        }
+    }
+
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        mStats = counter;
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return mStats;
+    }
+
+    /**
+     * Returns a copy of the current contents of this cache.
+     * The expired entries are not included.
+     * @return A copy of this cache.
+     */
+    @Override
+    public synchronized Map<K, V> snapshot() {
+        final long now = SystemClock.elapsedRealtime();
+        final Map<K, V> result = new LinkedHashMap<K, V>();
+        for (Node<K, V> node : mMap.values()) {
+            if (node.expireTime(mTimeToLive, mTimeToIdle) > now) {
+                result.put(node.key, node.value);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sweeps the expired entries of this cache. This method is called on a background
+     * thread at the tick of the earliest non-empty bucket of the timer wheel, while this
+     * cache is not empty.
+     */
+    @Override
+    public void run() {
+        final List<Node<K, V>> expired = new ArrayList<Node<K, V>>();
+        final long sweepDelay;
+        synchronized (this) {
+            final long now  = SystemClock.elapsedRealtime();
+            final long tick = now / mTickMillis;
+            if (tick - mLastTick >= WHEEL_SIZE) {
+                // Sweeps all buckets, If the wheel has been turned a full round.
+                for (int i = 0; i < WHEEL_SIZE; ++i) {
+                    sweepBucket(i, now, tick, expired);
+                }
+            } else {
+                for (long i = mLastTick + 1; i <= tick; ++i) {
+                    sweepBucket((int)(i & (WHEEL_SIZE - 1)), now, tick, expired);
+                }
+            }
+
+            mLastTick  = tick;
+            sweepDelay = nextSweepDelay(now, tick);
+            mScheduled = (sweepDelay >= 0);
+        }
+
+        if (sweepDelay >= 0) {
+            UIHandler.sInstance.postDelayed(mSweepTrigger, sweepDelay);
+        }
+
+        for (int i = 0, size = expired.size(); i < size; ++i) {
+            final Node<K, V> node = expired.get(i);
+            entryRemoved(true, node.key, node.value, null);
+        }
+    }
+
+    /**
+     * Remove the eldest entries until the total of remaining entries is
+     * at or below the requested size.
+     * @param maxSize The maximum size of the cache. May be <tt>-1</tt>
+     * to evict all entries.
+     * @param evicted If <tt>true</tt> the entry is being removed to make
+     * space, <tt>false</tt> otherwise.
+     */
+    protected void trimToSize(int maxSize, boolean evicted) {
+        Node<K, V> node;
+        while (true) {
+            synchronized (this) {
+                if (mSize <= maxSize || mMap.isEmpty()) {
+                    break;
+                }
+
+                final Iterator<Node<K, V>> itor = mMap.values().iterator();
+                node = itor.next();
+                itor.remove();
+                removeNode(node);
+                if (mStats != null) {
+                    mStats.recordEviction(node.size);
+                }
+            }
+
+            entryRemoved(evicted, node.key, node.value, null);
+        }
+    }
+
+    /**
+     * Returns the size of the entry for <em>key</em> and <em>value</em> in
+     * user-defined units. The default implementation returns <tt>1</tt>.
+     * @param key The key.
+     * @param value The value.
+     * @return The size of the entry, must be <tt>&gt;= 0</tt>.
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Called for entries that have been evicted, expired or removed. This method is invoked
+     * when a value is evicted to make space, expired, removed by a call to {@link #remove},
+     * or replaced by a call to {@link #put}. The default implementation does nothing. <p>The
+     * method is called without synchronization: other threads may access the cache while
+     * this method is executing.</p>
+     * @param evicted If <tt>true</tt> the entry is being removed to make space or expired,
+     * <tt>false</tt> if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param key The key.
+     * @param oldValue The old value for <em>key</em>.
+     * @param newValue The new value for <em>key</em> or <tt>null</tt>.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {
+    }
+
+    public void dump(Context context, Printer printer) {
+        final StringBuilder result = new StringBuilder(256);
+        final Map<K, V> snapshot = snapshot();
+
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ count = %d, size = %d, maxSize = %d, timeToLive = %d ms, timeToIdle = %d ms ] ", getClass().getSimpleName(), snapshot.size(), size(), mMaxSize, mTimeToLive, mTimeToIdle);
+        for (Entry<K, V> entry : snapshot.entrySet()) {
+            result.setLength(0);
+            printer.println(result.append("  ").append(entry.getKey()).append(" ==> ").append(entry.getValue()).toString());
+        }
+    }
+
+    /**
+     * Sweeps the specified <em>bucket</em>, removes the expired nodes and
+     * moves the nodes whose expire time was extended to their buckets.
+     */
+    private void sweepBucket(int bucket, long now, long tick, List<Node<K, V>> outExpired) {
+        Node<K, V> node = mWheel[bucket];
+        while (node != null) {
+            final Node<K, V> next = node.next;
+            final long expireTime = node.expireTime(mTimeToLive, mTimeToIdle);
+            if (expireTime <= now) {
+                mMap.remove(node.key);
+                removeNode(node);
+                outExpired.add(node);
+                if (mStats != null) {
+                    mStats.recordEviction(node.size);
+                }
+            } else {
+                // Moves to the next tick at least, the current buckets may be swept.
+                final int newBucket = bucketOf(expireTime, tick + 1);
+                if (newBucket != bucket) {
+                    unlink(node);
+                    link(node, newBucket);
+                }
+            }
+
+            node = next;
+        }
+    }
+
+    /**
+     * Returns the delay in milliseconds to the tick of the earliest non-empty
+     * bucket after the <em>tick</em>, or <tt>-1</tt> if the timer wheel is empty.
+     */
+    private long nextSweepDelay(long now, long tick) {
+        for (int i = 1; i <= WHEEL_SIZE; ++i) {
+            if (mWheel[(int)((tick + i) & (WHEEL_SIZE - 1))] != null) {
+                return (tick + i) * mTickMillis - now;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the bucket of the timer wheel for the specified <em>expireTime</em>,
+     * the tick of the bucket is not earlier than the <em>minTick</em>.
+     */
+    private int bucketOf(long expireTime, long minTick) {
+        return (int)(Math.max(expireTime / mTickMillis, minTick) & (WHEEL_SIZE - 1));
+    }
+
+    /**
+     * Removes the <em>node</em> from the timer wheel and the size of this cache.
+     * The caller must be remove the <em>node</em> from the <tt>mMap</tt>.
+     */
+    private void removeNode(Node<K, V> node) {
+        unlink(node);
+        mSize -= node.size;
+    }
+
+    private void link(Node<K, V> node, int bucket) {
+        final Node<K, V> head = mWheel[bucket];
+        node.bucket = bucket;
+        node.prev = null;
+        node.next = head;
+        if (head != null) {
+            head.prev = node;
+        }
+
+        mWheel[bucket] = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.bucket != -1) {
+            if (node.prev == null) {
+                mWheel[node.bucket] = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            }
+
+            node.prev = node.next = null;
+            node.bucket = -1;
+        }
+    }
+
+    private void recordAccess(V value) {
+        if (mStats != null) {
+            if (value != null) {
+                mStats.recordHit();
+            } else {
+                mStats.recordMiss();
+            }
+        }
+    }
+
+    /**
+     * Class <tt>Node</tt> holds an entry of this cache, it
+     * is also a node of the linked list of the timer wheel.
+     */
+    private static final class Node<K, V> {
+        /* package */ final K key;
+        /* package */ final V value;
+        /* package */ final int size;
+        /* package */ final long writeTime;
+        /* package */ long accessTime;
+
+        /* package */ int bucket;
+        /* package */ Node<K, V> prev;
+        /* package */ Node<K, V> next;
+
+        public Node(K key, V value, int size, long now) {
+            this.key   = key;
+            this.value = value;
+            this.size  = size;
+            this.bucket = -1;
+            this.writeTime  = now;
+            this.accessTime = now;
+        }
+
+        /**
+         * Returns the time in milliseconds when this node expires.
+         */
+        public final long expireTime(long timeToLive, long timeToIdle) {
+            final long expireAfterWrite  = (timeToLive > 0 ? writeTime + timeToLive : Long.MAX_VALUE);
+            final long expireAfterAccess = (timeToIdle > 0 ? accessTime + timeToIdle : Long.MAX_VALUE);
+            return Math.min(expireAfterWrite, expireAfterAccess);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package android.ext.cache;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import android.content.Context;
+import android.ext.util.DebugUtils;
+import android.ext.util.DeviceUtils;
+import android.util.Printer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Like as {@link SimpleLruCache}, but the keys of this cache are primitive <tt>int</tt>.
+ * The entries are stored in the parallel arrays, and the keys are indexed by an open
+ * addressing hash table, the access order is an intrusive doubly-linked list held in
+ * <tt>int</tt> arrays. So the {@link #get(int)} and {@link #put(int, Object)} never
+ * box the key or allocate an entry. This class is <b>not</b> thread-safely.
+ * @author Garfield
+ */
+public class IntLruCache<V> implements Cache<Integer, V> {
+    private static final int NONE = -1;
+
+    private int mSize;
+    private int mHead;
+    private int mTail;
+    private int mFree;
+    private int mCount;
+    private final int mMaxSize;
+
+    private int[] mKeys;
+    private int[] mPrev;
+    private int[] mNext;
+    private int[] mTable;
+    private Object[] mValues;
+    private StatsCounter mStats;
+
+    /**
+     * Constructor
+     * @param maxSize The maximum number of values to allow in this cache.
+     */
+    public IntLruCache(int maxSize) {
+        DebugUtils.__checkError(maxSize <= 0, "Invalid parameter - maxSize(" + maxSize + ") must be > 0");
+        mMaxSize = maxSize;
+        mHead = mTail = mFree = NONE;
+        allocate(Math.min(maxSize, 8));
+    }
+
+    /**
+     * Returns the maximum number of values to allow in this cache.
+     * @return The maximum size.
+     * @see #size()
+     */
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of values in this cache.
+     * @return The number of values in this cache.
+     * @see #maxSize()
+     */
+    public final int size() {
+        return mSize;
+    }
+
+    /**
+     * Clears this cache, but do not call {@link #entryRemoved} on each removed entry.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(mTable, 0);
+        Arrays.fill(mValues, 0, mCount, null);
+        mSize = mCount = 0;
+        mHead = mTail = mFree = NONE;
+    }
+
+    @Override
+    public V get(Integer key) {
+        return get(key.intValue());
+    }
+
+    /**
+     * Returns the value of the mapping with the specified <em>key</em> in this
+     * cache. The value is moved to the head of the queue.
+     * @param key The key to find.
+     * @return The value or <tt>null</tt> if there was no mapping.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        final int slot = mTable[indexOf(key)] - 1;
+        final V value;
+        if (slot == NONE) {
+            value = null;
+        } else {
+            moveToTail(slot);
+            value = (V)mValues[slot];
+        }
+
+        if (mStats != null) {
+            if (value != null) {
+                mStats.recordHit();
+            } else {
+                mStats.recordMiss();
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    /**
+     * Maps the specified <em>key</em> to the specified <tt>value</tt>.
+     * The <tt>value</tt> is moved to the head of the queue.
+     * @param key The key.
+     * @param value The value.
+     * @return The previous value mapped by <em>key</em> or <tt>null</tt>
+     * if there was no mapping.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Invalid parameter - value == null");
+        }
+
+        if (mStats != null) {
+            mStats.recordPut(1);
+        }
+
+        int index = indexOf(key);
+        int slot  = mTable[index] - 1;
+        if (slot != NONE) {
+            // Replaces the value of the existing entry.
+            final V previous = (V)mValues[slot];
+            mValues[slot] = value;
+            moveToTail(slot);
+            entryRemoved(false, key, previous, value);
+            return previous;
+        }
+
+        if (mSize >= mMaxSize) {
+            // Removes the eldest entry to make space.
+            trimToSize(mMaxSize - 1, false);
+            index = indexOf(key);
+        } else if (mSize == mKeys.length) {
+            allocate(Math.min(mKeys.length * 2, mMaxSize));
+            index = indexOf(key);
+        }
+
+        if (mFree != NONE) {
+            slot  = mFree;
+            mFree = mNext[slot];
+        } else {
+            slot = mCount++;
+        }
+
+        mKeys[slot]   = key;
+        mValues[slot] = value;
+        mTable[index] = slot + 1;
+        linkLast(slot);
+        ++mSize;
+        return null;
+    }
+
+    @Override
+    public V remove(Integer key) {
+        return remove(key.intValue());
+    }
+
+    /**
+     * Removes the value for the specified <em>key</em>.
+     * @param key The key to remove.
+     * @return The value mapped by <em>key</em> or <tt>null</tt>
+     * if there was no mapping.
+     */
+    public V remove(int key) {
+        final int index = indexOf(key);
+        final int slot  = mTable[index] - 1;
+        if (slot == NONE) {
+            return null;
+        }
+
+        final V previous = removeAt(index, slot);
+        entryRemoved(false, key, previous, null);
+        return previous;
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // Entering list of cached background apps, clear this cache.
+            clear();
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // The app's UI is no longer visible, or app is in the foreground but system
+            // is running critically low on memory. Remove the oldest half of this cache.
+            trimToSize(mMaxSize / 2, true);
+        }
+    }
+
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        mStats = counter;
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return mStats;
+    }
+
+    /**
+     * Returns a copy of the current contents of this cache. The iteration
+     * order is from least recently accessed to most recently accessed.
+     * @return A copy of this cache.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Integer, V> snapshot() {
+        final Map<Integer, V> result = new LinkedHashMap<Integer, V>();
+        for (int slot = mHead; slot != NONE; slot = mNext[slot]) {
+            result.put(mKeys[slot], (V)mValues[slot]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove the eldest entries until the total of remaining entries is
+     * at or below the requested size.
+     * @param maxSize The maximum size of the cache. May be <tt>-1</tt>
+     * to evict all entries.
+     * @param evicted If <tt>true</tt> the entry is being removed to make
+     * space, <tt>false</tt> otherwise.
+     */
+    protected void trimToSize(int maxSize, boolean evicted) {
+        while (mSize > maxSize && mHead != NONE) {
+            final int key = mKeys[mHead];
+            final V value = removeAt(indexOf(key), mHead);
+            if (mStats != null) {
+                mStats.recordEviction(1);
+            }
+
+            entryRemoved(evicted, key, value, null);
+        }
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is invoked when a value
+     * is evicted to make space, removed by a call to {@link #remove}, or replaced by a call to
+     * {@link #put}. The default implementation does nothing.
+     * @param evicted If <tt>true</tt> the entry is being removed to make space, <tt>false</tt>
+     * if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param key The key.
+     * @param oldValue The old value for <em>key</em>.
+     * @param newValue The new value for <em>key</em> or <tt>null</tt>.
+     */
+    protected void entryRemoved(boolean evicted, int key, V oldValue, V newValue) {
+    }
+
+    public void dump(Context context, Printer printer) {
+        final StringBuilder result = new StringBuilder(256);
+        final Set<Entry<Integer, V>> entries = snapshot().entrySet();
+
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ size = %d, maxSize = %d, capacity = %d ] ", getClass().getSimpleName(), mSize, mMaxSize, mKeys.length);
+        for (Entry<Integer, V> entry : entries) {
+            result.setLength(0);
+            printer.println(result.append("  ").append(entry.getKey()).append(" ==> ").append(entry.getValue()).toString());
+        }
+    }
+
+    /**
+     * Returns the index of the hash table which holds the <em>key</em>
+     * or the empty index where the <em>key</em> should be inserted.
+     */
+    private int indexOf(int key) {
+        final int mask = mTable.length - 1;
+        for (int index = hash(key) & mask; ; index = (index + 1) & mask) {
+            final int slot = mTable[index] - 1;
+            if (slot == NONE || mKeys[slot] == key) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Removes the entry at the specified <em>slot</em> and returns its value.
+     */
+    @SuppressWarnings("unchecked")
+    private V removeAt(int index, int slot) {
+        // Removes the slot from the hash table, shifts the
+        // following entries of the same probe sequence back.
+        final int mask = mTable.length - 1;
+        for (int next = (index + 1) & mask; mTable[next] != 0; next = (next + 1) & mask) {
+            final int home = hash(mKeys[mTable[next] - 1]) & mask;
+            if (index <= next ? (home <= index || home > next) : (home <= index && home > next)) {
+                mTable[index] = mTable[next];
+                index = next;
+            }
+        }
+
+        mTable[index] = 0;
+        unlink(slot);
+
+        final V value = (V)mValues[slot];
+        mValues[slot] = null;
+        mNext[slot] = mFree;
+        mFree = slot;
+        --mSize;
+        return value;
+    }
+
+    private void linkLast(int slot) {
+        mPrev[slot] = mTail;
+        mNext[slot] = NONE;
+        if (mTail == NONE) {
+            mHead = slot;
+        } else {
+            mNext[mTail] = slot;
+        }
+
+        mTail = slot;
+    }
+
+    private void unlink(int slot) {
+        final int prev = mPrev[slot], next = mNext[slot];
+        if (prev == NONE) {
+            mHead = next;
+        } else {
+            mNext[prev] = next;
+        }
+
+        if (next == NONE) {
+            mTail = prev;
+        } else {
+            mPrev[next] = prev;
+        }
+    }
+
+    private void moveToTail(int slot) {
+        if (slot != mTail) {
+            unlink(slot);
+            linkLast(slot);
+        }
+    }
+
+    /**
+     * Allocates the arrays of the specified <em>capacity</em> and rehashes all entries.
+     */
+    private void allocate(int capacity) {
+        if (mKeys == null) {
+            mKeys   = new int[capacity];
+            mPrev   = new int[capacity];
+            mNext   = new int[capacity];
+            mValues = new Object[capacity];
+        } else {
+            mKeys   = Arrays.copyOf(mKeys, capacity);
+            mPrev   = Arrays.copyOf(mPrev, capacity);
+            mNext   = Arrays.copyOf(mNext, capacity);
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+
+        // The hash table is at least twice the capacity, so it always has empty indexes.
+        mTable = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        final int mask = mTable.length - 1;
+        for (int slot = mHead; slot != NONE; slot = mNext[slot]) {
+            int index = hash(mKeys[slot]) & mask;
+            while (mTable[index] != 0) {
+                index = (index + 1) & mask;
+            }
+
+            mTable[index] = slot + 1;
+        }
+    }
+
+    private static int hash(int key) {
+        final int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16));
+    }
+}
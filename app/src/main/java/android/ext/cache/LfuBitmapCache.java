@@ -0,0 +1,75 @@
+package android.ext.cache;
+
+import android.content.Context;
+import android.ext.graphics.BitmapUtils;
+import android.ext.util.DeviceUtils;
+import android.ext.util.FileUtils;
+import android.graphics.Bitmap;
+import android.util.Printer;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Like as {@link LruBitmapCache}, but this class uses the W-TinyLFU policy to
+ * evict the bitmaps. If the {@link BitmapPool} is not <tt>null</tt>, the removed
+ * bitmap from this cache will be recycle to the pool to reused.
+ * <h3>Usage</h3>
+ * <p>Here is an example:</p><pre>
+ * private static ImageModule createImageModule(ImageModule.Builder builder) {
+ *     return builder
+ *         .setImageCache(new LfuBitmapCache&lt;Object&gt;((int)(Runtime.getRuntime().maxMemory() * 0.25f)))
+ *         .setFileCacheSize(1000)
+ *         .build();
+ * }</pre>
+ * @author Garfield
+ * @see TinyLfuCache
+ */
+public class LfuBitmapCache<K> extends TinyLfuCache<K, Bitmap> {
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * Constructor
+     * @param maxSize The maximum the number of bytes to allow in this cache.
+     * @see #LfuBitmapCache(int, BitmapPool)
+     */
+    public LfuBitmapCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Constructor
+     * @param maxSize The maximum the number of bytes to allow in this cache.
+     * @param bitmapPool May be <tt>null</tt>. The {@link BitmapPool} to recycle
+     * the removed bitmap from this cache.
+     * @see #LfuBitmapCache(int)
+     */
+    public LfuBitmapCache(int maxSize, BitmapPool bitmapPool) {
+        super(maxSize);
+        mBitmapPool = bitmapPool;
+    }
+
+    @Override
+    protected int sizeOf(K key, Bitmap value) {
+        return value.getAllocationByteCount();
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, K key, Bitmap oldValue, Bitmap newValue) {
+        if (mBitmapPool != null && !evicted && oldValue != newValue) {
+            mBitmapPool.put(oldValue);
+        }
+    }
+
+    @Override
+    public void dump(Context context, Printer printer) {
+        final Set<Entry<K, Bitmap>> entries = snapshot().entrySet();
+        final StringBuilder result = new StringBuilder(384);
+
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ count = %d, size = %s, maxSize = %s, appMaxSize = %s ] ", getClass().getSimpleName(), entries.size(), FileUtils.formatFileSize(size()), FileUtils.formatFileSize(maxSize()), FileUtils.formatFileSize(Runtime.getRuntime().maxMemory()));
+        for (Entry<K, Bitmap> entry : entries) {
+            result.setLength(0);
+            final Bitmap value = entry.getValue();
+            printer.println(BitmapUtils.dumpBitmap(context, result.append("  ").append(entry.getKey()).append(" ==> ").append(value), value).toString());
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package android.ext.cache;
 
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
 import android.content.Context;
 import android.ext.graphics.BitmapUtils;
 import android.ext.util.ArrayUtils;
 import android.ext.util.DebugUtils;
 import android.ext.util.DeviceUtils;
+import android.ext.util.FileUtils;
 import android.graphics.Bitmap;
 import android.util.Printer;
 import java.util.ArrayList;
@@ -18,6 +21,7 @@ import java.util.List;
  * @author Garfield
  */
 public class LinkedBitmapPool implements BitmapPool, Comparator<Bitmap> {
+    private int mByteCount;
     private final int mMaxSize;
     private final LinkedList<Bitmap> mBitmaps;
 
@@ -33,16 +37,42 @@ public class LinkedBitmapPool implements BitmapPool, Comparator<Bitmap> {
 
     @Override
     public synchronized void clear() {
+        mByteCount = 0;
         mBitmaps.clear();
     }
 
+    @Override
+    public synchronized void trimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // Entering list of cached background apps, clear this pool.
+            clear();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // The app's UI is no longer visible, or app is in the foreground
+            // but system is running low on memory. Keep a quarter of this pool.
+            trimToSize(mMaxSize / 4);
+        } else {
+            // The system is running moderately low on memory. Keep a half of this pool.
+            trimToSize(mMaxSize / 2);
+        }
+    }
+
+    /**
+     * Returns the total number of bytes of all bitmaps in this pool.
+     * @return The total number of bytes.
+     */
+    public synchronized final int getByteCount() {
+        return mByteCount;
+    }
+
     @Override
     public synchronized Bitmap get(int size) {
         final Iterator<Bitmap> itor = mBitmaps.iterator();
         while (itor.hasNext()) {
             final Bitmap bitmap = itor.next();
-            if (bitmap.getAllocationByteCount() >= size) {
+            final int byteCount = bitmap.getAllocationByteCount();
+            if (byteCount >= size) {
                 itor.remove();
+                mByteCount -= byteCount;
                 return bitmap;
             }
         }
@@ -58,11 +88,17 @@ public class LinkedBitmapPool implements BitmapPool, Comparator<Bitmap> {
         if (bitmap.isMutable() && !bitmap.isRecycled()) {
             // Inserts the bitmap into the mBitmaps at the appropriate position.
             ArrayUtils.insert(mBitmaps, bitmap, this);
+            mByteCount += bitmap.getAllocationByteCount();
+            trimToSize(mMaxSize);
+        }
+    }
 
-            // Removes the smallest bitmaps until the mBitmaps.size() is less the mMaxSize.
-            while (mBitmaps.size() > mMaxSize) {
-                mBitmaps.removeFirst();
-            }
+    /**
+     * Removes the smallest bitmaps until the mBitmaps.size() is less the maxSize.
+     */
+    private void trimToSize(int maxSize) {
+        while (mBitmaps.size() > maxSize) {
+            mByteCount -= mBitmaps.removeFirst().getAllocationByteCount();
         }
     }
 
@@ -73,13 +109,15 @@ public class LinkedBitmapPool implements BitmapPool, Comparator<Bitmap> {
 
     public final void dump(Context context, Printer printer) {
         final List<Bitmap> bitmaps;
+        final int byteCount;
         synchronized (this) {
+            byteCount = mByteCount;
             bitmaps = new ArrayList<Bitmap>(mBitmaps);
         }
 
         final int size = bitmaps.size();
         final StringBuilder result = new StringBuilder(288);
-        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ size = %d, maxSize = %d ] ", getClass().getSimpleName(), size, mMaxSize);
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ size = %d, maxSize = %d, bytes = %s ] ", getClass().getSimpleName(), size, mMaxSize, FileUtils.formatFileSize(byteCount));
         for (int i = 0; i < size; ++i) {
             result.setLength(0);
             final Bitmap bitmap = bitmaps.get(i);
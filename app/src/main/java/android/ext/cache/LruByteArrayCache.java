@@ -0,0 +1,42 @@
+package android.ext.cache;
+
+import android.content.Context;
+import android.ext.util.DeviceUtils;
+import android.ext.util.FileUtils;
+import android.util.Printer;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Class <tt>LruByteArrayCache</tt> is an implementation of a {@link LruCache}.
+ * This cache is bounded by the total length of the byte arrays. Typically used
+ * to store the encoded image data (e.g. JPEG, WebP) as a secondary memory tier
+ * of the bitmap cache.
+ * @author Garfield
+ */
+public class LruByteArrayCache<K> extends LruCache<K, byte[]> {
+    /**
+     * Constructor
+     * @param maxSize The maximum the number of bytes to allow in this cache.
+     */
+    public LruByteArrayCache(int maxSize) {
+        super(maxSize);
+    }
+
+    @Override
+    protected int sizeOf(K key, byte[] value) {
+        return value.length;
+    }
+
+    @Override
+    public void dump(Context context, Printer printer) {
+        final Set<Entry<K, byte[]>> entries = snapshot().entrySet();
+        final StringBuilder result = new StringBuilder(256);
+
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ count = %d, size = %s, maxSize = %s ] ", getClass().getSimpleName(), entries.size(), FileUtils.formatFileSize(size()), FileUtils.formatFileSize(maxSize()));
+        for (Entry<K, byte[]> entry : entries) {
+            result.setLength(0);
+            printer.println(result.append("  ").append(entry.getKey()).append(" ==> ").append(FileUtils.formatFileSize(entry.getValue().length)).toString());
+        }
+    }
+}
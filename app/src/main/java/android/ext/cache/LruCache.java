@@ -50,7 +50,9 @@ public class LruCache<K, V> extends SimpleLruCache<K, V> {
             throw new NullPointerException("Invalid parameter - key == null");
         }
 
-        return map.get(key);
+        final V value = map.get(key);
+        recordAccess(value);
+        return value;
     }
 
     @Override
@@ -75,6 +77,9 @@ public class LruCache<K, V> extends SimpleLruCache<K, V> {
                 final int result = sizeOf(key, value);
                 DebugUtils.__checkError(result < 0, "Negative size: " + key + " = " + value);
                 size -= result;
+                if (stats != null) {
+                    stats.recordEviction(result);
+                }
             }
 
             entryRemoved(evicted, key, value, null);
@@ -111,6 +116,10 @@ public class LruCache<K, V> extends SimpleLruCache<K, V> {
         }
 
         size += result;
+        if (stats != null) {
+            stats.recordPut(result);
+        }
+
         final V previous = map.put(key, value);
         if (previous != null) {
             size -= sizeOf(key, previous);
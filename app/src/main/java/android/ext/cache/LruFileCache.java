@@ -1,26 +1,75 @@
 package android.ext.cache;
 
 import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import android.ext.concurrent.ThreadPool;
 import android.ext.content.AsyncTask;
 import android.ext.util.DebugUtils;
 import android.ext.util.DeviceUtils;
 import android.ext.util.FileUtils;
+import android.ext.util.FileUtils.Dirent;
 import android.ext.util.FileUtils.ScanCallback;
 import android.os.Process;
 import android.util.Printer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class <tt>LruFileCache</tt> is an implementation of a {@link FileCache}.
+ * <p>This class keeps an in-memory index of the cache files (key &rarr; file
+ * size in access order) which is backed by a journal file in the cache directory.
+ * Each put, access and remove appends a record to the journal, the journal will
+ * be compacted when the redundant records are too many. The access records are
+ * buffered and written with the next put or trim, or when the buffer is full.
+ * Trimming the cache only touches the evicted files.</p>
+ * <p>The cache is bounded by the number of files and the total bytes of files.
+ * The total bytes is accounted incrementally on put and remove, the eldest files
+ * will be removed in background when either bound is exceeded.</p>
+ * <p>If the cache is sharded, each file is stored in a 2-level subdirectory named
+ * by the first two characters of its key (e.g. <tt>cacheDir/a/b/ab12...</tt>), the
+ * files of the flat layout are moved into the subdirectories lazily, when they are
+ * accessed. The directory scan and the file deletion run in parallel per shard.</p>
  * @author Garfield
  */
 public final class LruFileCache implements FileCache, ScanCallback, Runnable, Comparator<String> {
+    private static final String JOURNAL_FILE = ".journal";
+    private static final String JOURNAL_FILE_TEMP = ".journal.tmp";
+    private static final String JOURNAL_MAGIC = "LruFileCache 1";
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+    private static final int SHARD_COUNT = 16;
+
+    private static final char PUT    = 'P';
+    private static final char READ   = 'R';
+    private static final char DELETE = 'D';
+
     private final int mMaxSize;
+    private final long mMaxBytes;
+    private final boolean mSharded;
     private final File mCacheDir;
+    private StatsCounter mStats;
+
+    private Writer mJournal;
+    private long mCacheSize;
+    private int mFlatFiles;
+    private int mRedundantOps;
+    private boolean mTrimScheduled;
+    private LinkedHashMap<String, Long> mEntries;
+    private final Set<String> mEvictedKeys;
 
     /**
      * Constructor
@@ -28,9 +77,35 @@ public final class LruFileCache implements FileCache, ScanCallback, Runnable, Co
      * @param maxSize The maximum number of files to allow in this cache.
      */
     public LruFileCache(File cacheDir, int maxSize) {
-        DebugUtils.__checkError(cacheDir == null || maxSize <= 0, "Invalid parameters - cacheDir == null || maxSize(" + maxSize + ") <= 0");
+        this(cacheDir, maxSize, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor
+     * @param cacheDir The absolute path of the cache directory.
+     * @param maxSize The maximum number of files to allow in this cache.
+     * @param maxBytes The maximum number of bytes of all files to allow in this cache.
+     */
+    public LruFileCache(File cacheDir, int maxSize, long maxBytes) {
+        this(cacheDir, maxSize, maxBytes, false);
+    }
+
+    /**
+     * Constructor
+     * @param cacheDir The absolute path of the cache directory.
+     * @param maxSize The maximum number of files to allow in this cache.
+     * @param maxBytes The maximum number of bytes of all files to allow in this cache.
+     * @param sharded Whether to store the files in the 2-level subdirectories of
+     * the <em>cacheDir</em>. The existing files of the flat layout will be moved
+     * into the subdirectories lazily.
+     */
+    public LruFileCache(File cacheDir, int maxSize, long maxBytes, boolean sharded) {
+        DebugUtils.__checkError(cacheDir == null || maxSize <= 0 || maxBytes <= 0, "Invalid parameters - cacheDir == null || maxSize(" + maxSize + ") <= 0 || maxBytes(" + maxBytes + ") <= 0");
         mMaxSize  = maxSize;
+        mMaxBytes = maxBytes;
+        mSharded  = sharded;
         mCacheDir = cacheDir;
+        mEvictedKeys = new HashSet<String>();
     }
 
     /**
@@ -41,15 +116,29 @@ public final class LruFileCache implements FileCache, ScanCallback, Runnable, Co
         return mMaxSize;
     }
 
+    /**
+     * Returns the maximum number of bytes of all files allow in this cache.
+     * @return The maximum number of bytes.
+     */
+    public final long maxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Returns the number of files in this cache.
+     * @return The number of files.
+     */
+    public synchronized final int size() {
+        return loadEntries().size();
+    }
+
     /**
      * Returns the total number of bytes of all cache files.
      * @return The total number of bytes.
      */
-    public final long getCacheSize() {
-        DebugUtils.__checkStartMethodTracing();
-        final long result = FileUtils.computeFileSize(mCacheDir.getPath());
-        DebugUtils.__checkStopMethodTracing("LruFileCache", "getCacheSize = " + result + "(" + FileUtils.formatFileSize(result) + ")");
-        return result;
+    public synchronized final long getCacheSize() {
+        loadEntries();
+        return mCacheSize;
     }
 
     @Override
@@ -58,33 +147,137 @@ public final class LruFileCache implements FileCache, ScanCallback, Runnable, Co
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         DebugUtils.__checkStartMethodTracing();
-        FileUtils.deleteFiles(mCacheDir.getPath(), false);
+        FileUtils.close(mJournal);
+        mJournal = null;
+        mCacheSize = 0;
+        mFlatFiles = 0;
+        mRedundantOps = 0;
+        mEntries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+        if (mSharded) {
+            final List<String> paths = new ArrayList<String>();
+            scanFiles(mCacheDir.getPath(), paths, paths);
+            new ParallelTask(paths.size()) {
+                @Override
+                protected void runShard(int shard) {
+                    FileUtils.deleteFiles(paths.get(shard), true);
+                }
+            }.execute();
+        } else {
+            FileUtils.deleteFiles(mCacheDir.getPath(), false);
+        }
+
+        rebuildJournal();
         DebugUtils.__checkStopMethodTracing("LruFileCache", "clear");
     }
 
     @Override
     public File remove(String key) {
         DebugUtils.__checkError(key == null, "Invalid parameter - key == null");
-        final File cacheFile = new File(mCacheDir, key);
-        return (cacheFile.delete() ? cacheFile : null);
+        synchronized (this) {
+            final Long size = loadEntries().remove(key);
+            if (size != null) {
+                mCacheSize -= size;
+                appendRecord(DELETE, key, -1);
+                ++mRedundantOps;
+            }
+        }
+
+        return deleteFile(key);
     }
 
     @Override
     public File get(String key) {
         DebugUtils.__checkError(key == null, "Invalid parameter - key == null");
-        final File cacheFile = new File(mCacheDir, key);
-        cacheFile.setLastModified(System.currentTimeMillis());
+        final boolean hit, migrate, compact;
+        synchronized (this) {
+            if (hit = (loadEntries().get(key) != null)) {
+                // The access record is buffered, never flushes the journal.
+                appendRecord(READ, key, -1);
+                ++mRedundantOps;
+            }
+
+            migrate = (hit && mFlatFiles > 0);
+            if (compact = (!mTrimScheduled && needsCompact())) {
+                mTrimScheduled = true;
+            }
+        }
+
+        if (compact) {
+            // Compacts the journal in background.
+            AsyncTask.SERIAL_EXECUTOR.execute(this);
+        }
+
+        final File cacheFile = getFile(key);
+        if (migrate) {
+            // Moves the file of the flat layout into its subdirectory.
+            final File flatFile = new File(mCacheDir, key);
+            if (flatFile.exists() && FileUtils.moveFile(flatFile.getPath(), cacheFile.getPath()) == 0) {
+                decrementFlatFiles();
+            }
+        }
+
+        if (mStats != null) {
+            if (hit) {
+                mStats.recordHit();
+            } else {
+                mStats.recordMiss();
+            }
+        }
+
         return cacheFile;
     }
 
     @Override
     public File put(String key, File cacheFile) {
         DebugUtils.__checkError(key == null || cacheFile == null, "Invalid parameters - key == null || cacheFile == null");
+        final long size;
+        final boolean trim;
+        synchronized (this) {
+            // Waits for the trimming to delete the file of the evicted key, the
+            // file may be deleted by the trimming, which has evicted the key before.
+            waitEvictedKey(key);
+            if ((size = cacheFile.length()) == 0 && !cacheFile.exists()) {
+                return null;
+            }
+
+            final Long prevSize = loadEntries().put(key, size);
+            if (prevSize != null) {
+                mCacheSize -= prevSize;
+                ++mRedundantOps;
+            }
+
+            mCacheSize += size;
+            appendRecord(PUT, key, size);
+            flushJournal();
+            if (trim = (!mTrimScheduled && (mEntries.size() > mMaxSize || mCacheSize > mMaxBytes || needsCompact()))) {
+                mTrimScheduled = true;
+            }
+        }
+
+        if (mStats != null) {
+            mStats.recordPut(size);
+        }
+
+        if (trim) {
+            // Removes the eldest files and compacts the journal in background.
+            AsyncTask.SERIAL_EXECUTOR.execute(this);
+        }
+
         return null;
     }
 
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        mStats = counter;
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return mStats;
+    }
+
     @Override
     public void trimMemory(int level) {
         if (level >= TRIM_MEMORY_UI_HIDDEN) {
@@ -100,15 +293,15 @@ public final class LruFileCache implements FileCache, ScanCallback, Runnable, Co
         try {
             DebugUtils.__checkStartMethodTracing();
             Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND);
-            final List<String> files = listFiles();
-            final int size = files.size();
-            if (size > mMaxSize) {
-                Collections.sort(files, this);
-                for (int i = mMaxSize; i < size; ++i) {
-                    FileUtils.deleteFiles(files.get(i), false);
+            final List<String> evictedKeys = trimToSize(mMaxSize, mMaxBytes);
+            if (mSharded && evictedKeys.size() > SHARD_COUNT) {
+                deleteFiles(evictedKeys);
+            } else {
+                for (int i = 0, size = evictedKeys.size(); i < size; ++i) {
+                    evictFile(evictedKeys.get(i));
                 }
             }
-            DebugUtils.__checkStopMethodTracing("LruFileCache", "trimToSize size = " + size + ", maxSize = " + mMaxSize + (size > mMaxSize ? ", deleteSize = " + (size - mMaxSize) : ""));
+            DebugUtils.__checkStopMethodTracing("LruFileCache", "trimToSize maxSize = " + mMaxSize + ", maxBytes = " + FileUtils.formatFileSize(mMaxBytes) + ", deleteSize = " + evictedKeys.size());
         } finally {
             Process.setThreadPriority(priority);
         }
@@ -117,27 +310,450 @@ public final class LruFileCache implements FileCache, ScanCallback, Runnable, Co
     @Override
     @SuppressWarnings("unchecked")
     public final int onScanFile(String path, int type, Object cookie) {
-        ((List<Object>)cookie).add(path);
+        // cookie = { files, subdirs }, the subdirs may be null.
+        final List<String>[] result = (List<String>[])cookie;
+        if (type != Dirent.DT_DIR) {
+            result[0].add(path);
+        } else if (result[1] != null) {
+            result[1].add(path);
+        }
+
         return SC_CONTINUE;
     }
 
     @Override
     public final int compare(String one, String another) {
-        // Sort by descending order.
-        return Long.compare(FileUtils.getLastModified(another), FileUtils.getLastModified(one));
+        // Sort by ascending order.
+        return Long.compare(FileUtils.getLastModified(one), FileUtils.getLastModified(another));
+    }
+
+    private synchronized List<String> trimToSize(int maxSize, long maxBytes) {
+        mTrimScheduled = false;
+        final LinkedHashMap<String, Long> entries = loadEntries();
+        final List<String> result = new ArrayList<String>(Math.max(entries.size() - maxSize, 0));
+        final Iterator<Entry<String, Long>> itor = entries.entrySet().iterator();
+        while ((entries.size() > maxSize || mCacheSize > maxBytes) && itor.hasNext()) {
+            final Entry<String, Long> entry = itor.next();
+            final String key  = entry.getKey();
+            final long size = entry.getValue();
+            if (mStats != null) {
+                mStats.recordEviction(size);
+            }
+
+            mCacheSize -= size;
+            itor.remove();
+            appendRecord(DELETE, key, -1);
+            mEvictedKeys.add(key);
+            result.add(key);
+        }
+
+        mRedundantOps += result.size();
+        if (needsCompact()) {
+            rebuildJournal();
+        } else {
+            flushJournal();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the index of this cache, loads the index from the journal file
+     * or rebuilds the index from the cache directory, if it is not loaded.
+     */
+    private LinkedHashMap<String, Long> loadEntries() {
+        if (mEntries == null) {
+            DebugUtils.__checkStartMethodTracing();
+            mEntries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+            final boolean loaded = readJournal();
+            if (!loaded) {
+                scanEntries();
+            }
+
+            if (!loaded || mJournal == null || needsCompact()) {
+                rebuildJournal();
+            }
+
+            if (mSharded && loaded) {
+                // Counts the files of the flat layout, which need to migrate.
+                final List<String> files = new ArrayList<String>();
+                scanFiles(mCacheDir.getPath(), files, null);
+                mFlatFiles = files.size();
+            }
+            DebugUtils.__checkStopMethodTracing("LruFileCache", "loadEntries - " + (loaded ? "readJournal" : "scanEntries") + " size = " + mEntries.size());
+        }
+
+        return mEntries;
+    }
+
+    private boolean readJournal() {
+        final File journalFile = new File(mCacheDir, JOURNAL_FILE);
+        if (!journalFile.exists()) {
+            return false;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(journalFile), 8192);
+            if (!JOURNAL_MAGIC.equals(reader.readLine())) {
+                return false;
+            }
+
+            // The last line is truncated, If the process died while writing it.
+            final boolean truncated = !endsWithNewline(journalFile);
+            int lineCount = 0;
+            for (String line = reader.readLine(), next; line != null; line = next, ++lineCount) {
+                if ((next = reader.readLine()) == null && truncated) {
+                    // Drops the truncated last line, the journal will be rebuilt.
+                    DebugUtils.__checkWarning(true, "LruFileCache", "Drops the truncated journal record - " + line);
+                    break;
+                }
+
+                final int length = line.length();
+                if (length < 3 || line.charAt(1) != ' ') {
+                    // The journal is corrupted.
+                    return false;
+                }
+
+                switch (line.charAt(0)) {
+                case PUT:
+                    final int index = line.indexOf(' ', 2);
+                    if (index == -1) {
+                        return false;
+                    }
+
+                    final Long size = Long.valueOf(line.substring(index + 1));
+                    final Long prevSize = mEntries.put(line.substring(2, index), size);
+                    mCacheSize += (prevSize != null ? size - prevSize : size);
+                    break;
+
+                case READ:
+                    mEntries.get(line.substring(2));
+                    break;
+
+                case DELETE:
+                    final Long removedSize = mEntries.remove(line.substring(2));
+                    if (removedSize != null) {
+                        mCacheSize -= removedSize;
+                    }
+                    break;
+
+                default:
+                    return false;
+                }
+            }
+
+            mRedundantOps = lineCount - mEntries.size();
+            if (!truncated) {
+                mJournal = new BufferedWriter(new FileWriter(journalFile, true), 8192);
+            }
+
+            return true;
+        } catch (Exception e) {
+            DebugUtils.__checkLogError(true, "LruFileCache", "Couldn't read journal - " + journalFile, e);
+            return false;
+        } finally {
+            FileUtils.close(reader);
+        }
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long length = raf.length();
+            if (length == 0) {
+                return true;
+            }
+
+            raf.seek(length - 1);
+            return (raf.read() == '\n');
+        }
+    }
+
+    private void scanEntries() {
+        mCacheSize = 0;
+        mEntries.clear();
+        final List<String> files = listFiles();
+        Collections.sort(files, this);
+        for (int i = 0, size = files.size(); i < size; ++i) {
+            final File file = new File(files.get(i));
+            final long length = file.length();
+            mEntries.put(file.getName(), length);
+            mCacheSize += length;
+        }
+    }
+
+    private void rebuildJournal() {
+        FileUtils.close(mJournal);
+        mJournal = null;
+        mRedundantOps = 0;
+
+        final File tempFile = new File(mCacheDir, JOURNAL_FILE_TEMP);
+        Writer writer = null;
+        try {
+            FileUtils.mkdirs(mCacheDir.getPath(), 0);
+            writer = new BufferedWriter(new FileWriter(tempFile), 8192);
+            writer.write(JOURNAL_MAGIC);
+            writer.write('\n');
+            for (Entry<String, Long> entry : mEntries.entrySet()) {
+                writeRecord(writer, PUT, entry.getKey(), entry.getValue());
+            }
+
+            writer.close();
+            writer = null;
+
+            final File journalFile = new File(mCacheDir, JOURNAL_FILE);
+            if (tempFile.renameTo(journalFile)) {
+                mJournal = new BufferedWriter(new FileWriter(journalFile, true), 8192);
+            } else {
+                // Deletes the stale journal, rebuild the index from the cache directory on the next load.
+                journalFile.delete();
+            }
+        } catch (IOException e) {
+            DebugUtils.__checkLogError(true, "LruFileCache", "Couldn't rebuild journal - " + tempFile, e);
+        } finally {
+            FileUtils.close(writer);
+        }
+    }
+
+    private void appendRecord(char op, String key, long size) {
+        if (mJournal != null) {
+            try {
+                writeRecord(mJournal, op, key, size);
+            } catch (IOException e) {
+                // The journal is broken, rebuild it on the next load.
+                DebugUtils.__checkLogError(true, "LruFileCache", "Couldn't write journal - " + mCacheDir, e);
+                FileUtils.close(mJournal);
+                mJournal = null;
+                new File(mCacheDir, JOURNAL_FILE).delete();
+            }
+        }
     }
 
+    private void flushJournal() {
+        if (mJournal != null) {
+            try {
+                mJournal.flush();
+            } catch (IOException e) {
+                DebugUtils.__checkLogError(true, "LruFileCache", "Couldn't flush journal - " + mCacheDir, e);
+            }
+        }
+    }
+
+    private boolean needsCompact() {
+        return (mRedundantOps >= REDUNDANT_OP_COMPACT_THRESHOLD && mRedundantOps >= mEntries.size());
+    }
+
+    @SuppressWarnings("unchecked")
     private List<String> listFiles() {
         DebugUtils.__checkDebug(true, "LruFileCache", "listFiles initialCapacity = " + (mMaxSize / 10));
         final List<String> files = new ArrayList<String>(mMaxSize / 10);
-        FileUtils.scanFiles(mCacheDir.getPath(), this, 0, files);
+        final List<String> subdirs = new ArrayList<String>();
+        scanFiles(mCacheDir.getPath(), files, (mSharded ? subdirs : null));
+        if (mSharded) {
+            // Scans the subdirectories in parallel.
+            mFlatFiles = files.size();
+            final List<String>[] results = new List[subdirs.size()];
+            new ParallelTask(results.length) {
+                @Override
+                protected void runShard(int shard) {
+                    final List<String> result = new ArrayList<String>();
+                    FileUtils.scanFiles(subdirs.get(shard), LruFileCache.this, FileUtils.FLAG_IGNORE_HIDDEN_FILE | FileUtils.FLAG_SCAN_FOR_DESCENDENTS, new List[] { result, null });
+                    results[shard] = result;
+                }
+            }.execute();
+
+            for (List<String> result : results) {
+                files.addAll(result);
+            }
+        }
+
         return files;
     }
 
+    private void scanFiles(String dirPath, List<String> outFiles, List<String> outSubdirs) {
+        FileUtils.scanFiles(dirPath, this, FileUtils.FLAG_IGNORE_HIDDEN_FILE, new List[] { outFiles, outSubdirs });
+    }
+
+    private File getFile(String key) {
+        return (mSharded && key.length() > 2 ? new File(mCacheDir, new StringBuilder(key.length() + 4).append(key.charAt(0)).append('/').append(key.charAt(1)).append('/').append(key).toString()) : new File(mCacheDir, key));
+    }
+
+    private File deleteFile(String key) {
+        final File cacheFile = getFile(key);
+        if (cacheFile.delete()) {
+            return cacheFile;
+        }
+
+        if (mSharded && mFlatFiles > 0) {
+            // Deletes the file of the flat layout, which has not been migrated.
+            final File flatFile = new File(mCacheDir, key);
+            if (flatFile.delete()) {
+                decrementFlatFiles();
+                return flatFile;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Deletes the file of the evicted <em>key</em> without holding the lock. The key
+     * was reserved by the {@link #trimToSize}, the {@link #put} of the key waits until
+     * the file has been deleted.
+     */
+    private void evictFile(String key) {
+        deleteFile(key);
+        synchronized (this) {
+            mEvictedKeys.remove(key);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the file of the evicted <em>key</em> has been deleted.
+     */
+    private void waitEvictedKey(String key) {
+        boolean interrupted = false;
+        while (mEvictedKeys.contains(key)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deleteFiles(List<String> keys) {
+        // Groups the keys by the first level subdirectory.
+        final List<String>[] shards = new List[SHARD_COUNT];
+        for (int i = 0, size = keys.size(); i < size; ++i) {
+            final String key = keys.get(i);
+            final int shard  = Character.digit(key.charAt(0), 16) & (SHARD_COUNT - 1);
+            if (shards[shard] == null) {
+                shards[shard] = new ArrayList<String>();
+            }
+
+            shards[shard].add(key);
+        }
+
+        new ParallelTask(SHARD_COUNT) {
+            @Override
+            protected void runShard(int shard) {
+                final List<String> shardKeys = shards[shard];
+                if (shardKeys != null) {
+                    for (int i = 0, size = shardKeys.size(); i < size; ++i) {
+                        evictFile(shardKeys.get(i));
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    private synchronized void decrementFlatFiles() {
+        --mFlatFiles;
+    }
+
+    private static void writeRecord(Writer writer, char op, String key, long size) throws IOException {
+        writer.write(op);
+        writer.write(' ');
+        writer.write(key);
+        if (op == PUT) {
+            writer.write(' ');
+            writer.write(Long.toString(size));
+        }
+
+        writer.write('\n');
+    }
+
     public final void dump(Printer printer) {
+        final int files;
+        final long cacheSize;
+        final int redundantOps;
+        synchronized (this) {
+            // Never loads the index on the calling thread.
+            files = (mEntries != null ? mEntries.size() : -1);
+            cacheSize = mCacheSize;
+            redundantOps = mRedundantOps;
+        }
+
         final StringBuilder result = new StringBuilder(100);
-        DeviceUtils.dumpSummary(printer, result, 100, " Dumping LruFileCache [ files = %d, size = %s ] ", listFiles().size(), FileUtils.formatFileSize(FileUtils.computeFileSize(mCacheDir.getPath())));
+        final String maxSize = (mMaxBytes != Long.MAX_VALUE ? FileUtils.formatFileSize(mMaxBytes) : "unlimited");
+        if (files == -1) {
+            DeviceUtils.dumpSummary(printer, result, 100, " Dumping LruFileCache [ not loaded, maxFiles = %d, maxSize = %s ] ", mMaxSize, maxSize);
+        } else {
+            DeviceUtils.dumpSummary(printer, result, 100, " Dumping LruFileCache [ files = %d, maxFiles = %d, size = %s, maxSize = %s, redundantOps = %d ] ", files, mMaxSize, FileUtils.formatFileSize(cacheSize), maxSize, redundantOps);
+        }
+
         result.setLength(0);
         printer.println(result.append("  cacheDir = ").append(mCacheDir).toString());
     }
+
+    /**
+     * Class <tt>ParallelTask</tt> runs the {@link #runShard(int)} for each shard
+     * in parallel. The calling thread also runs the shards, so it never waits for
+     * a helper thread which has not been started.
+     */
+    private static abstract class ParallelTask implements Runnable {
+        private static final int PARALLELISM = ThreadPool.computeMaximumThreads();
+
+        private int mDoneCount;
+        private final int mShardCount;
+        private final AtomicInteger mNextShard;
+
+        public ParallelTask(int shardCount) {
+            mShardCount = shardCount;
+            mNextShard  = new AtomicInteger();
+        }
+
+        /**
+         * Runs all shards and waits for them to complete.
+         */
+        public final void execute() {
+            for (int i = Math.min(mShardCount, PARALLELISM) - 1; i > 0; --i) {
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(this);
+            }
+
+            run();
+            boolean interrupted = false;
+            synchronized (this) {
+                while (mDoneCount < mShardCount) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public final void run() {
+            for (int shard; (shard = mNextShard.getAndIncrement()) < mShardCount; ) {
+                try {
+                    runShard(shard);
+                } finally {
+                    synchronized (this) {
+                        if (++mDoneCount == mShardCount) {
+                            notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Runs the specified <em>shard</em> on the calling or a helper thread.
+         * @param shard The index of the shard.
+         */
+        protected abstract void runShard(int shard);
+    }
 }
@@ -4,6 +4,10 @@ import android.content.Context;
 import android.ext.util.DebugUtils;
 import android.graphics.Bitmap;
 import android.util.Printer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Class <tt>LruImageCache</tt> is an implementation of a {@link Cache}.
@@ -12,6 +16,7 @@ import android.util.Printer;
 public final class LruImageCache<K> implements Cache<K, Object> {
     private final Cache<K, Object> mImageCache;
     private final Cache<K, Bitmap> mBitmapCache;
+    private StatsCounter mStats;
 
     /**
      * Constructor
@@ -38,13 +43,37 @@ public final class LruImageCache<K> implements Cache<K, Object> {
 
     @Override
     public Object get(K key) {
-        final Object value = mBitmapCache.get(key);
-        return (value != null ? value : mImageCache.get(key));
+        Object value = mBitmapCache.get(key);
+        if (value == null) {
+            value = mImageCache.get(key);
+        }
+
+        if (mStats != null) {
+            if (value != null) {
+                mStats.recordHit();
+            } else {
+                mStats.recordMiss();
+            }
+        }
+
+        return value;
     }
 
     @Override
     public Object put(K key, Object value) {
-        return (value instanceof Bitmap ? mBitmapCache.put(key, (Bitmap)value) : mImageCache.put(key, value));
+        if (value instanceof Bitmap) {
+            if (mStats != null) {
+                mStats.recordPut(((Bitmap)value).getAllocationByteCount());
+            }
+
+            return mBitmapCache.put(key, (Bitmap)value);
+        } else {
+            if (mStats != null) {
+                mStats.recordPut(1);
+            }
+
+            return mImageCache.put(key, value);
+        }
     }
 
     @Override
@@ -53,6 +82,60 @@ public final class LruImageCache<K> implements Cache<K, Object> {
         mBitmapCache.trimMemory(level);
     }
 
+    /**
+     * Sets the {@link StatsCounter} to record the statistics of this cache. This cache
+     * records the hits, misses and puts, the evictions are recorded by the bitmap cache
+     * and the image cache with their own <tt>StatsCounter</tt>.
+     * @param counter May be <tt>null</tt>. The <tt>StatsCounter</tt> to record or
+     * <tt>null</tt> to disable the recording.
+     */
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        mStats = counter;
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return mStats;
+    }
+
+    /**
+     * Returns a copy of the current contents of this cache. The images
+     * are followed by the bitmaps, each in the order of its own cache.
+     * @return A copy of this cache.
+     */
+    @Override
+    public Map<K, Object> snapshot() {
+        final Map<K, Object> result = new LinkedHashMap<K, Object>(mImageCache.snapshot());
+        result.putAll(mBitmapCache.snapshot());
+        return result;
+    }
+
+    /**
+     * Returns the keys of this cache, the most recently accessed key first. The bitmap
+     * cache and the image cache have no common access order, so the keys are taken from
+     * each cache in turn, ordered by the rank in its own cache.
+     * @param maxCount The maximum number of keys to return.
+     * @return A <tt>List</tt> of the keys.
+     */
+    @Override
+    public List<K> hotKeys(int maxCount) {
+        final List<K> bitmapKeys = mBitmapCache.hotKeys(maxCount);
+        final List<K> imageKeys  = mImageCache.hotKeys(maxCount);
+        final List<K> result = new ArrayList<K>(Math.min(bitmapKeys.size() + imageKeys.size(), maxCount));
+        for (int rank = 0; result.size() < maxCount && (rank < bitmapKeys.size() || rank < imageKeys.size()); ++rank) {
+            if (rank < bitmapKeys.size()) {
+                result.add(bitmapKeys.get(rank));
+            }
+
+            if (rank < imageKeys.size() && result.size() < maxCount) {
+                result.add(imageKeys.get(rank));
+            }
+        }
+
+        return result;
+    }
+
     public final void dump(Context context, Printer printer) {
         Cache.dumpCache(context, printer, mBitmapCache);
         Cache.dumpCache(context, printer, mImageCache);
@@ -0,0 +1,202 @@
+package android.ext.cache;
+
+import android.content.Context;
+import android.ext.util.DebugUtils;
+import android.ext.util.DeviceUtils;
+import android.util.Printer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class <tt>ReferenceCache</tt> is an implementation of a {@link Cache}. This class
+ * wraps a strong {@link Cache} and keeps a {@link WeakReference} to each value evicted
+ * from it. The strong cache must call {@link #entryEvicted} from its eviction callback
+ * (e.g. {@link SimpleLruCache#entryRemoved} with <tt>evicted = true</tt>). When the evicted
+ * value is still reachable (e.g. the bitmap still shown in an <tt>ImageView</tt>), the
+ * {@link #get} returns the value from the weak references and promotes it back into the
+ * strong cache. The cleared references are removed by a {@link ReferenceQueue}.
+ * <p>Note: The strong cache must <b>not</b> reuse or recycle the evicted values (e.g.
+ * recycle the evicted bitmaps to a {@link BitmapPool}).</p>
+ * @author Garfield
+ */
+public final class ReferenceCache<K, V> implements Cache<K, V> {
+    private long mWeakHitCount;
+    private final Cache<K, V> mCache;
+    private final ReferenceQueue<V> mQueue;
+    private final Map<K, ValueReference<K, V>> mReferences;
+
+    /**
+     * Constructor
+     * @param cache The strong {@link Cache} to store the values.
+     */
+    public ReferenceCache(Cache<K, V> cache) {
+        DebugUtils.__checkError(cache == null, "Invalid parameter - cache == null");
+        mCache = cache;
+        mQueue = new ReferenceQueue<V>();
+        mReferences = new HashMap<K, ValueReference<K, V>>();
+    }
+
+    /**
+     * Returns the strong {@link Cache} associated with this cache.
+     * @return The strong <tt>Cache</tt>.
+     */
+    public final Cache<K, V> getCache() {
+        return mCache;
+    }
+
+    /**
+     * Returns the number of the hits which served by the weak references.
+     * @return The number of the weak hits.
+     */
+    public synchronized final long getWeakHitCount() {
+        return mWeakHitCount;
+    }
+
+    @Override
+    public void clear() {
+        mCache.clear();
+        synchronized (this) {
+            mReferences.clear();
+            while (mQueue.poll() != null) {
+                // Drains the cleared references.
+            }
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        final V value;
+        synchronized (this) {
+            final ValueReference<K, V> reference = mReferences.remove(key);
+            value = (reference != null ? reference.get() : null);
+        }
+
+        final V previous = mCache.remove(key);
+        return (previous != null ? previous : value);
+    }
+
+    @Override
+    public V get(K key) {
+        V value = mCache.get(key);
+        if (value == null) {
+            synchronized (this) {
+                expungeStaleReferences();
+                final ValueReference<K, V> reference = mReferences.remove(key);
+                if (reference != null && (value = reference.get()) != null) {
+                    ++mWeakHitCount;
+                }
+            }
+
+            if (value != null) {
+                // Promotes the value back into the strong cache.
+                mCache.put(key, value);
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        synchronized (this) {
+            // The value of the key is held by the strong cache now.
+            mReferences.remove(key);
+        }
+
+        return mCache.put(key, value);
+    }
+
+    /**
+     * Called by the strong cache when an entry has been evicted to make space.
+     * Keeps a {@link WeakReference} to the evicted <em>value</em>, so it can be
+     * returned by the {@link #get} as long as it is still reachable.
+     * @param key The key of the evicted entry.
+     * @param value The evicted value.
+     */
+    public final void entryEvicted(K key, V value) {
+        synchronized (this) {
+            expungeStaleReferences();
+            mReferences.put(key, new ValueReference<K, V>(key, value, mQueue));
+        }
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        mCache.trimMemory(level);
+        synchronized (this) {
+            expungeStaleReferences();
+        }
+    }
+
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        mCache.setStatsCounter(counter);
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return mCache.getStatsCounter();
+    }
+
+    /**
+     * Returns a copy of the current contents of the strong cache.
+     * The values which only reachable by the weak references are
+     * not included.
+     * @return A copy of the strong cache.
+     */
+    @Override
+    public Map<K, V> snapshot() {
+        return mCache.snapshot();
+    }
+
+    /**
+     * Returns the keys of the strong cache, in the order of the strong cache.
+     * @param maxCount The maximum number of keys to return.
+     * @return A <tt>List</tt> of the keys.
+     */
+    @Override
+    public List<K> hotKeys(int maxCount) {
+        return mCache.hotKeys(maxCount);
+    }
+
+    public final void dump(Context context, Printer printer) {
+        final int size;
+        final long weakHitCount;
+        synchronized (this) {
+            expungeStaleReferences();
+            size = mReferences.size();
+            weakHitCount = mWeakHitCount;
+        }
+
+        Cache.dumpCache(context, printer, mCache);
+        DeviceUtils.dumpSummary(printer, new StringBuilder(130), 130, " Dumping %s [ references = %d, weakHits = %d ] ", getClass().getSimpleName(), size, weakHitCount);
+    }
+
+    /**
+     * Removes the references whose values has been garbage collected.
+     */
+    @SuppressWarnings("unchecked")
+    private void expungeStaleReferences() {
+        for (ValueReference<K, V> reference; (reference = (ValueReference<K, V>)mQueue.poll()) != null; ) {
+            if (mReferences.get(reference.key) == reference) {
+                mReferences.remove(reference.key);
+            }
+        }
+    }
+
+    /**
+     * Class <tt>ValueReference</tt> is a {@link WeakReference} to the value
+     * which holds the key, so it can be removed after the value is cleared.
+     */
+    private static final class ValueReference<K, V> extends WeakReference<V> {
+        /* package */ final K key;
+
+        public ValueReference(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
@@ -21,8 +21,9 @@ import java.util.Set;
  * @author Garfield
  */
 public class SimpleLruCache<K, V> implements Cache<K, V> {
-    /* package */ final int maxSize;
+    /* package */ volatile int maxSize;
     /* package */ final Map<K, V> map;
+    /* package */ StatsCounter stats;
 
     /**
      * Constructor
@@ -43,6 +44,18 @@ public class SimpleLruCache<K, V> implements Cache<K, V> {
         return maxSize;
     }
 
+    /**
+     * Sets the maximum size of this cache in user-defined units. If the new <em>maxSize</em>
+     * is less than the current size, the eldest entries will be evicted to fit.
+     * @param maxSize The new maximum size, must be greater than <tt>0</tt>.
+     * @see #maxSize()
+     */
+    public void resize(int maxSize) {
+        DebugUtils.__checkError(maxSize <= 0, "Invalid parameter - maxSize(" + maxSize + ") must be > 0");
+        this.maxSize = maxSize;
+        trimToSize(maxSize, true);
+    }
+
     /**
      * Returns the number of entries in this cache.
      * @return The number of entries in this cache.
@@ -66,7 +79,9 @@ public class SimpleLruCache<K, V> implements Cache<K, V> {
             throw new NullPointerException("Invalid parameter - key == null");
         }
 
-        return map.get(key);
+        final V value = map.get(key);
+        recordAccess(value);
+        return value;
     }
 
     /**
@@ -118,10 +133,21 @@ public class SimpleLruCache<K, V> implements Cache<K, V> {
         }
     }
 
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        stats = counter;
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return stats;
+    }
+
     /**
      * Returns a copy of the current contents of this cache.
      * @return A copy of this cache.
      */
+    @Override
     public Map<K, V> snapshot() {
         return new LinkedHashMap<K, V>(map);
     }
@@ -140,6 +166,10 @@ public class SimpleLruCache<K, V> implements Cache<K, V> {
             final K key = toEvict.getKey();
             final V value = toEvict.getValue();
             map.remove(key);
+            if (stats != null) {
+                stats.recordEviction(1);
+            }
+
             entryRemoved(evicted, key, value, null);
         }
     }
@@ -169,9 +199,26 @@ public class SimpleLruCache<K, V> implements Cache<K, V> {
      * Maps the specified <em>key</em> to the specified <tt>value</tt>.
      */
     /* package */ V putImpl(K key, V value) {
+        if (stats != null) {
+            stats.recordPut(1);
+        }
+
         return map.put(key, value);
     }
 
+    /**
+     * Records a cache hit or miss, If this cache is recording statistics.
+     */
+    /* package */ final void recordAccess(V value) {
+        if (stats != null) {
+            if (value != null) {
+                stats.recordHit();
+            } else {
+                stats.recordMiss();
+            }
+        }
+    }
+
     public void dump(Context context, Printer printer) {
         final StringBuilder result = new StringBuilder(256);
         final Set<Entry<K, V>> entries = snapshot().entrySet();
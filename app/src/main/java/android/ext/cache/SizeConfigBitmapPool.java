@@ -0,0 +1,198 @@
+package android.ext.cache;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import android.content.Context;
+import android.ext.graphics.BitmapUtils;
+import android.ext.util.DebugUtils;
+import android.ext.util.DeviceUtils;
+import android.ext.util.FileUtils;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.util.Printer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Class <tt>SizeConfigBitmapPool</tt> is an implementation of a {@link BitmapPool}.
+ * This class groups the bitmaps by {@link Config} and allocation byte count, the
+ * {@link #get(int)} finds the smallest bitmap whose allocation byte count greater
+ * than or equal to the requested size in <tt>O(log n)</tt> time. A bitmap which is
+ * larger than <em>maxSizeRatio</em> times of the requested size is never returned.
+ * This pool is bounded by the total bytes of bitmaps, the least recently pooled
+ * bitmaps will be removed when the pool is full.
+ * @author Garfield
+ */
+public class SizeConfigBitmapPool implements BitmapPool {
+    private static final float DEFAULT_MAX_SIZE_RATIO = 2.0f;
+
+    private int mSize;
+    private final int mMaxSize;
+    private final float mMaxSizeRatio;
+    private final LinkedHashMap<Bitmap, Integer> mBitmaps;
+    private final Map<Config, TreeMap<Integer, ArrayDeque<Bitmap>>> mGroups;
+
+    /**
+     * Constructor
+     * @param maxSize The maximum number of bytes to allow in this pool.
+     * @see #SizeConfigBitmapPool(int, float)
+     */
+    public SizeConfigBitmapPool(int maxSize) {
+        this(maxSize, DEFAULT_MAX_SIZE_RATIO);
+    }
+
+    /**
+     * Constructor
+     * @param maxSize The maximum number of bytes to allow in this pool.
+     * @param maxSizeRatio The maximum ratio of the allocation byte count of the
+     * reused bitmap to the requested size. Must be greater than or equal to <tt>1.0</tt>.
+     * @see #SizeConfigBitmapPool(int)
+     */
+    public SizeConfigBitmapPool(int maxSize, float maxSizeRatio) {
+        DebugUtils.__checkError(maxSize <= 0 || maxSizeRatio < 1.0f, "Invalid parameters - maxSize(" + maxSize + ") <= 0 || maxSizeRatio(" + maxSizeRatio + ") < 1.0");
+        mMaxSize = maxSize;
+        mMaxSizeRatio = maxSizeRatio;
+        mBitmaps = new LinkedHashMap<Bitmap, Integer>();
+        mGroups  = new HashMap<Config, TreeMap<Integer, ArrayDeque<Bitmap>>>();
+    }
+
+    /**
+     * Returns the total number of bytes of all bitmaps in this pool.
+     * @return The total number of bytes.
+     * @see #maxSize()
+     */
+    public synchronized final int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes to allow in this pool.
+     * @return The maximum number of bytes.
+     * @see #size()
+     */
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public synchronized void clear() {
+        mSize = 0;
+        mGroups.clear();
+        mBitmaps.clear();
+    }
+
+    @Override
+    public synchronized void trimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // Entering list of cached background apps, clear this pool.
+            clear();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            // The app's UI is no longer visible, or app is in the foreground
+            // but system is running low on memory. Keep a quarter of this pool.
+            trimToSize(mMaxSize / 4);
+        } else {
+            // The system is running moderately low on memory. Keep a half of this pool.
+            trimToSize(mMaxSize / 2);
+        }
+    }
+
+    @Override
+    public synchronized Bitmap get(int size) {
+        // Finds the smallest bitmap of all configs.
+        final int maxSize = (int)Math.min(size * (double)mMaxSizeRatio, Integer.MAX_VALUE);
+        TreeMap<Integer, ArrayDeque<Bitmap>> result = null;
+        Entry<Integer, ArrayDeque<Bitmap>> candidate = null;
+        for (TreeMap<Integer, ArrayDeque<Bitmap>> group : mGroups.values()) {
+            final Entry<Integer, ArrayDeque<Bitmap>> entry = group.ceilingEntry(size);
+            if (entry != null && entry.getKey() <= maxSize && (candidate == null || entry.getKey() < candidate.getKey())) {
+                result = group;
+                candidate = entry;
+            }
+        }
+
+        if (candidate == null) {
+            return null;
+        }
+
+        final Bitmap bitmap = candidate.getValue().pollLast();
+        if (candidate.getValue().isEmpty()) {
+            result.remove(candidate.getKey());
+        }
+
+        mBitmaps.remove(bitmap);
+        mSize -= candidate.getKey();
+        return bitmap;
+    }
+
+    @Override
+    public synchronized void put(Bitmap bitmap) {
+        DebugUtils.__checkError(bitmap == null, "Invalid parameter - bitmap == null");
+        DebugUtils.__checkWarning(bitmap.isRecycled(), "BitmapPool", "Invalid parameter - The " + bitmap + " is recycled, couldn't recycle to reused.");
+        DebugUtils.__checkWarning(!bitmap.isMutable(), "BitmapPool", "Invalid parameter - The " + bitmap + " is immutable, couldn't recycle to reused.");
+        final int size = bitmap.getAllocationByteCount();
+        if (bitmap.isMutable() && !bitmap.isRecycled() && size <= mMaxSize && mBitmaps.put(bitmap, size) == null) {
+            final Config config = bitmap.getConfig();
+            TreeMap<Integer, ArrayDeque<Bitmap>> group = mGroups.get(config);
+            if (group == null) {
+                mGroups.put(config, group = new TreeMap<Integer, ArrayDeque<Bitmap>>());
+            }
+
+            ArrayDeque<Bitmap> bitmaps = group.get(size);
+            if (bitmaps == null) {
+                group.put(size, bitmaps = new ArrayDeque<Bitmap>());
+            }
+
+            bitmaps.addLast(bitmap);
+            mSize += size;
+            trimToSize(mMaxSize);
+        }
+    }
+
+    /**
+     * Removes the least recently pooled bitmaps until the total bytes
+     * of the remaining bitmaps less than or equal to <em>maxSize</em>.
+     * @param maxSize The maximum number of bytes.
+     */
+    private void trimToSize(int maxSize) {
+        final Iterator<Entry<Bitmap, Integer>> itor = mBitmaps.entrySet().iterator();
+        while (mSize > maxSize && itor.hasNext()) {
+            final Entry<Bitmap, Integer> entry = itor.next();
+            final Bitmap bitmap = entry.getKey();
+            final int size = entry.getValue();
+            final TreeMap<Integer, ArrayDeque<Bitmap>> group = mGroups.get(bitmap.getConfig());
+            final ArrayDeque<Bitmap> bitmaps = group.get(size);
+            bitmaps.removeFirstOccurrence(bitmap);
+            if (bitmaps.isEmpty()) {
+                group.remove(size);
+            }
+
+            itor.remove();
+            mSize -= size;
+        }
+    }
+
+    public final void dump(Context context, Printer printer) {
+        final List<Bitmap> bitmaps;
+        final int size;
+        synchronized (this) {
+            size = mSize;
+            bitmaps = new ArrayList<Bitmap>(mBitmaps.keySet());
+        }
+
+        final int count = bitmaps.size();
+        final StringBuilder result = new StringBuilder(288);
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ count = %d, size = %s, maxSize = %s, maxSizeRatio = %.1f ] ", getClass().getSimpleName(), count, FileUtils.formatFileSize(size), FileUtils.formatFileSize(mMaxSize), mMaxSizeRatio);
+        for (int i = 0; i < count; ++i) {
+            result.setLength(0);
+            final Bitmap bitmap = bitmaps.get(i);
+            printer.println(BitmapUtils.dumpBitmap(context, result.append("  ").append(bitmap), bitmap).toString());
+        }
+    }
+}
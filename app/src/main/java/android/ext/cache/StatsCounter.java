@@ -0,0 +1,97 @@
+package android.ext.cache;
+
+import android.ext.util.LatencyHistogram;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class <tt>StatsCounter</tt> accumulates the statistics during the operation of
+ * a {@link Cache}. The statistics recording is opt-in, see {@link Cache#setStatsCounter}.
+ * Each record costs a few atomic increments. This class is thread-safely.
+ * @author Garfield
+ * @see CacheStats
+ */
+public final class StatsCounter {
+    private final AtomicLong mHitCount;
+    private final AtomicLong mMissCount;
+    private final AtomicLong mPutCount;
+    private final AtomicLong mPutSize;
+    private final AtomicLong mEvictionCount;
+    private final AtomicLong mEvictionSize;
+    private final LatencyHistogram mLoadTime;
+
+    /**
+     * Constructor
+     */
+    public StatsCounter() {
+        mHitCount  = new AtomicLong();
+        mMissCount = new AtomicLong();
+        mPutCount  = new AtomicLong();
+        mPutSize   = new AtomicLong();
+        mEvictionCount = new AtomicLong();
+        mEvictionSize  = new AtomicLong();
+        mLoadTime  = new LatencyHistogram();
+    }
+
+    /**
+     * Records a cache hit.
+     * @see #recordMiss()
+     */
+    public final void recordHit() {
+        mHitCount.incrementAndGet();
+    }
+
+    /**
+     * Records a cache miss.
+     * @see #recordHit()
+     */
+    public final void recordMiss() {
+        mMissCount.incrementAndGet();
+    }
+
+    /**
+     * Records a value added to the cache.
+     * @param size The size of the value in the cache's units (e.g. bytes).
+     */
+    public final void recordPut(long size) {
+        mPutCount.incrementAndGet();
+        mPutSize.addAndGet(size);
+    }
+
+    /**
+     * Records a value evicted from the cache.
+     * @param size The size of the value in the cache's units (e.g. bytes).
+     */
+    public final void recordEviction(long size) {
+        mEvictionCount.incrementAndGet();
+        mEvictionSize.addAndGet(size);
+    }
+
+    /**
+     * Records the time spent to load a missing value.
+     * @param loadTime The load time in nanoseconds.
+     */
+    public final void recordLoad(long loadTime) {
+        mLoadTime.record(loadTime);
+    }
+
+    /**
+     * Resets all statistics of this counter to zero.
+     */
+    public final void reset() {
+        mHitCount.set(0);
+        mMissCount.set(0);
+        mPutCount.set(0);
+        mPutSize.set(0);
+        mEvictionCount.set(0);
+        mEvictionSize.set(0);
+        mLoadTime.reset();
+    }
+
+    /**
+     * Returns an immutable snapshot of the current statistics of this counter.
+     * @return The {@link CacheStats}.
+     */
+    public final CacheStats snapshot() {
+        return new CacheStats(mHitCount.get(), mMissCount.get(), mPutCount.get(), mPutSize.get(), mEvictionCount.get(), mEvictionSize.get(), mLoadTime.getCounts(), mLoadTime.getTotalTime());
+    }
+}
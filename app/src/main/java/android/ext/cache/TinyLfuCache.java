@@ -0,0 +1,501 @@
+package android.ext.cache;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import android.content.Context;
+import android.ext.util.DebugUtils;
+import android.ext.util.DeviceUtils;
+import android.util.Printer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Class <tt>TinyLfuCache</tt> is a frequency-aware implementation of a {@link Cache}.
+ * This class uses the W-TinyLFU policy: the new entries are added to a small window
+ * LRU, the entries evicted from the window compete with the eldest entries of the
+ * segmented main LRU (probation and protected), and a count-min sketch estimates the
+ * access frequency of the keys to decide which one to keep. Unlike {@link LruCache}
+ * a burst of one-time accesses (e.g. a long fling through a list) cannot flush the
+ * frequently used values. This class is thread-safely. By default, this cache size
+ * is the number of entries. Overrides {@link #sizeOf} to size this cache in different
+ * units.
+ * @author Garfield
+ */
+public class TinyLfuCache<K, V> implements Cache<K, V> {
+    private final int mMaxSize;
+    private final int mWindowMaxSize;
+    private final int mProtectedMaxSize;
+
+    private int mSize;
+    private int mWindowSize;
+    private int mProtectedSize;
+
+    private final Map<K, V> mWindow;
+    private final Map<K, V> mProbation;
+    private final Map<K, V> mProtected;
+    private final FrequencySketch mSketch;
+    private StatsCounter mStats;
+
+    /**
+     * Constructor
+     * @param maxSize For caches that do not override {@link #sizeOf}, this is
+     * the maximum number of entries to allow in this cache. For all other caches,
+     * this is the maximum sum of the sizes of the entries to allow in this cache.
+     */
+    public TinyLfuCache(int maxSize) {
+        DebugUtils.__checkError(maxSize <= 0, "Invalid parameter - maxSize(" + maxSize + ") must be > 0");
+        mMaxSize = maxSize;
+        mWindowMaxSize = Math.max(maxSize / 100, 1);
+        mProtectedMaxSize = (int)((maxSize - mWindowMaxSize) * 0.8f);
+
+        mSketch = new FrequencySketch();
+        mWindow = new LinkedHashMap<K, V>(0, 0.75f, true);
+        mProbation = new LinkedHashMap<K, V>(0, 0.75f, true);
+        mProtected = new LinkedHashMap<K, V>(0, 0.75f, true);
+    }
+
+    /**
+     * Returns the maximum size in this cache in user-defined units.
+     * @return The maximum size.
+     * @see #size()
+     */
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns
+     * the number of entries in the cache. For all other caches, this
+     * returns the sum of the sizes of the entries in this cache.
+     * @return The size.
+     * @see #maxSize()
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Clears this cache, but do not call {@link #entryRemoved} on each removed entry.
+     */
+    @Override
+    public synchronized void clear() {
+        mSize = 0;
+        mWindowSize = 0;
+        mProtectedSize = 0;
+        mWindow.clear();
+        mProbation.clear();
+        mProtected.clear();
+    }
+
+    @Override
+    public V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("Invalid parameter - key == null");
+        }
+
+        synchronized (this) {
+            mSketch.increment(key);
+            V value = mWindow.get(key);
+            if (value == null && (value = mProtected.get(key)) == null && (value = mProbation.remove(key)) != null) {
+                // Promotes the value from the probation to the protected.
+                mProtectedSize += sizeOf(key, value);
+                mProtected.put(key, value);
+                demoteProtected();
+            }
+
+            if (mStats != null) {
+                if (value != null) {
+                    mStats.recordHit();
+                } else {
+                    mStats.recordMiss();
+                }
+            }
+
+            return value;
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Invalid parameters - key == null || value == null");
+        }
+
+        final V previous;
+        synchronized (this) {
+            final int result = sizeOf(key, value);
+            if (result < 0) {
+                throw new IllegalStateException("Negative size: " + key + " = " + value);
+            }
+
+            mSketch.increment(key);
+            previous = removeImpl(key);
+            mWindow.put(key, value);
+            mWindowSize += result;
+            mSize += result;
+            if (mStats != null) {
+                mStats.recordPut(result);
+            }
+
+            mSketch.ensureCapacity(mWindow.size() + mProbation.size() + mProtected.size());
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, value);
+        }
+
+        trimToSize(mMaxSize, false);
+        return previous;
+    }
+
+    @Override
+    public V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("Invalid parameter - key == null");
+        }
+
+        final V previous;
+        synchronized (this) {
+            previous = removeImpl(key);
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous, null);
+        }
+
+        return previous;
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // Entering list of cached background apps, clear this cache.
+            clear();
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // The app's UI is no longer visible, or app is in the foreground but system
+            // is running critically low on memory. Remove the least valuable half of this cache.
+            trimToSize(mMaxSize / 2, true);
+        }
+    }
+
+    @Override
+    public void setStatsCounter(StatsCounter counter) {
+        mStats = counter;
+    }
+
+    @Override
+    public StatsCounter getStatsCounter() {
+        return mStats;
+    }
+
+    /**
+     * Returns a copy of the current contents of this cache. The entries
+     * of the protected region are followed by the probation and window.
+     * @return A copy of this cache.
+     */
+    @Override
+    public synchronized Map<K, V> snapshot() {
+        final Map<K, V> result = new LinkedHashMap<K, V>(mProtected);
+        result.putAll(mProbation);
+        result.putAll(mWindow);
+        return result;
+    }
+
+    /**
+     * Returns the keys of this cache, the keys of the protected region are followed
+     * by the window and probation, each the most recently accessed key first.
+     * @param maxCount The maximum number of keys to return.
+     * @return A <tt>List</tt> of the keys.
+     */
+    @Override
+    public synchronized List<K> hotKeys(int maxCount) {
+        final List<K> result = new ArrayList<K>(Math.min(mWindow.size() + mProbation.size() + mProtected.size(), maxCount));
+        addHotKeys(result, mProtected, maxCount);
+        addHotKeys(result, mWindow, maxCount);
+        addHotKeys(result, mProbation, maxCount);
+        return result;
+    }
+
+    /**
+     * Returns the size of the entry for <tt>key</tt> and <tt>value</tt> in
+     * user-defined units. The default implementation returns 1 so that size
+     * is the number of entries and max size is the maximum number of entries.
+     * @param key The key.
+     * @param value The value.
+     * @return The size of the entry, must be <tt>>= 0</tt>.
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is invoked when a value
+     * is evicted to make space, removed by a call to {@link #remove}, or replaced by a call to
+     * {@link #put}. The default implementation does nothing. <p>The method is called without
+     * synchronization: other threads may access the cache while this method is executing.</p>
+     * @param evicted If <tt>true</tt> the entry is being removed to make space, <tt>false</tt>
+     * if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param key The key.
+     * @param oldValue The old value for <em>key</em>.
+     * @param newValue The new value for <em>key</em> or <tt>null</tt>.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {
+    }
+
+    /**
+     * Remove the least valuable entries until the total of remaining entries
+     * is at or below the requested size.
+     * @param maxSize The maximum size of the cache. May be <tt>-1</tt> to
+     * evict all entries.
+     * @param evicted If <tt>true</tt> the entry is being removed to make
+     * space, <tt>false</tt> otherwise.
+     */
+    protected void trimToSize(int maxSize, boolean evicted) {
+        K key;
+        V value;
+        while (true) {
+            synchronized (this) {
+                final Entry<K, V> toEvict = nextEvictable(maxSize);
+                if (toEvict == null) {
+                    break;
+                }
+
+                key = toEvict.getKey();
+                value = toEvict.getValue();
+            }
+
+            entryRemoved(evicted, key, value, null);
+        }
+    }
+
+    public void dump(Context context, Printer printer) {
+        final StringBuilder result = new StringBuilder(256);
+        final Set<Entry<K, V>> entries = snapshot().entrySet();
+
+        DeviceUtils.dumpSummary(printer, result, 130, " Dumping %s [ count = %d, size = %d, maxSize = %d ] ", getClass().getSimpleName(), entries.size(), size(), mMaxSize);
+        for (Entry<?, ?> entry : entries) {
+            result.setLength(0);
+            printer.println(result.append("  ").append(entry.getKey()).append(" ==> ").append(entry.getValue()).toString());
+        }
+    }
+
+    /**
+     * Moves the overflow entries of the window to the main, and returns the
+     * next entry to evict or <tt>null</tt> if this cache is at or below the
+     * <em>maxSize</em>. The returned entry has been removed from this cache.
+     */
+    private Entry<K, V> nextEvictable(int maxSize) {
+        while (mWindowSize > mWindowMaxSize) {
+            final Entry<K, V> candidate = mWindow.entrySet().iterator().next();
+            final K key = candidate.getKey();
+            final V value = candidate.getValue();
+            final int size = sizeOf(key, value);
+            mWindow.remove(key);
+            mWindowSize -= size;
+
+            // Admits the candidate, If the main has room. Otherwise the candidate competes
+            // with the victim of the main, and the less frequently used one is evicted.
+            final Map<K, V> victimRegion = (mProbation.isEmpty() ? mProtected : mProbation);
+            final K victim = eldestKey(victimRegion);
+            if (victim == null || mSize - mWindowSize <= mMaxSize - mWindowMaxSize) {
+                mProbation.put(key, value);
+            } else if (mSketch.frequency(key) > mSketch.frequency(victim)) {
+                // The candidate is appended to the probation, the victim is still the eldest.
+                mProbation.put(key, value);
+                return removeEldest(victimRegion);
+            } else {
+                mSize -= size;
+                if (mStats != null) {
+                    mStats.recordEviction(size);
+                }
+
+                return candidate;
+            }
+        }
+
+        if (mSize <= maxSize) {
+            return null;
+        }
+
+        final Map<K, V> region = (!mProbation.isEmpty() ? mProbation : (!mProtected.isEmpty() ? mProtected : mWindow));
+        return (region.isEmpty() ? null : removeEldest(region));
+    }
+
+    /**
+     * Removes the eldest entry of the specified <em>region</em>.
+     * @return The removed entry.
+     */
+    private Entry<K, V> removeEldest(Map<K, V> region) {
+        final Entry<K, V> toEvict = region.entrySet().iterator().next();
+        final K key = toEvict.getKey();
+        final int size = sizeOf(key, toEvict.getValue());
+        DebugUtils.__checkError(size < 0, "Negative size: " + key + " = " + toEvict.getValue());
+        region.remove(key);
+        mSize -= size;
+        if (mStats != null) {
+            mStats.recordEviction(size);
+        }
+
+        if (region == mWindow) {
+            mWindowSize -= size;
+        } else if (region == mProtected) {
+            mProtectedSize -= size;
+        }
+
+        return toEvict;
+    }
+
+    /**
+     * Moves the eldest entries of the protected to the probation, until the
+     * protected is at or below the maximum size of the protected.
+     */
+    private void demoteProtected() {
+        while (mProtectedSize > mProtectedMaxSize && mProtected.size() > 1) {
+            final Entry<K, V> toDemote = mProtected.entrySet().iterator().next();
+            final K key = toDemote.getKey();
+            final V value = toDemote.getValue();
+            mProtected.remove(key);
+            mProtectedSize -= sizeOf(key, value);
+            mProbation.put(key, value);
+        }
+    }
+
+    /**
+     * Removes the entry for the specified <em>key</em>.
+     */
+    private V removeImpl(K key) {
+        V previous = mWindow.remove(key);
+        if (previous != null) {
+            mWindowSize -= sizeOf(key, previous);
+        } else if ((previous = mProtected.remove(key)) != null) {
+            mProtectedSize -= sizeOf(key, previous);
+        } else if ((previous = mProbation.remove(key)) == null) {
+            return null;
+        }
+
+        mSize -= sizeOf(key, previous);
+        return previous;
+    }
+
+    private static <K> K eldestKey(Map<K, ?> region) {
+        return (region.isEmpty() ? null : region.keySet().iterator().next());
+    }
+
+    /**
+     * Adds the keys of the <em>region</em> to <em>result</em>, the most recently accessed key first.
+     */
+    private static <K> void addHotKeys(List<K> result, Map<K, ?> region, int maxCount) {
+        final Object[] keys = region.keySet().toArray();
+        for (int i = keys.length - 1; i >= 0 && result.size() < maxCount; --i) {
+            result.add((K)keys[i]);
+        }
+    }
+
+    /**
+     * Class <tt>FrequencySketch</tt> is a count-min sketch with the 4-bit
+     * counters to estimate the popularity of a key within a time window.
+     */
+    private static final class FrequencySketch {
+        private static final long ONE_MASK   = 0x1111111111111111L;
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+        private int mSize;
+        private int mSampleSize;
+        private long[] mTable;
+
+        /**
+         * Constructor
+         */
+        public FrequencySketch() {
+            ensureCapacity(16);
+        }
+
+        /**
+         * Increases the capacity of this sketch, If the number of
+         * entries exceeds the capacity. The history will be lost.
+         */
+        public final void ensureCapacity(int maximumSize) {
+            if (mTable == null || maximumSize > mTable.length) {
+                final int capacity = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+                mTable = new long[capacity];
+                mSampleSize = capacity * 10;
+                mSize = 0;
+            }
+        }
+
+        /**
+         * Returns the estimated number of occurrences of the <em>key</em>, up to the maximum (15).
+         */
+        public final int frequency(Object key) {
+            final int hash  = spread(key.hashCode());
+            final int start = (hash & 3) << 2;
+            int frequency = 15;
+            for (int i = 0; i < 4; ++i) {
+                final int count = (int)((mTable[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xFL);
+                frequency = Math.min(frequency, count);
+            }
+
+            return frequency;
+        }
+
+        /**
+         * Increments the popularity of the <em>key</em> if it does not exceed the maximum (15). The
+         * popularity of all keys will be periodically down sampled when the observed events exceed
+         * a threshold. This process provides a frequency aging to allow expired long term entries
+         * to fade away.
+         */
+        public final void increment(Object key) {
+            final int hash  = spread(key.hashCode());
+            final int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; ++i) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+
+            if (added && ++mSize == mSampleSize) {
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            final int offset = counter << 2;
+            final long mask  = (0xFL << offset);
+            if ((mTable[index] & mask) != mask) {
+                mTable[index] += (1L << offset);
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Reduces every counter by half of its original value.
+         */
+        private void reset() {
+            int count = 0;
+            for (int i = 0; i < mTable.length; ++i) {
+                count += Long.bitCount(mTable[i] & ONE_MASK);
+                mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+            }
+
+            mSize = (mSize >>> 1) - (count >>> 2);
+        }
+
+        private int indexOf(int hash, int i) {
+            long result = (hash + SEEDS[i]) * SEEDS[i];
+            result += (result >>> 32);
+            return ((int)result & (mTable.length - 1));
+        }
+
+        private static int spread(int hash) {
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            return (hash >>> 16) ^ hash;
+        }
+    }}
@@ -1,10 +1,15 @@
 package android.ext.concurrent;
 
 import android.ext.util.ArrayUtils;
+import android.ext.util.DeviceUtils;
 import android.os.Process;
+import android.util.Printer;
 import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -68,7 +73,10 @@ public class ThreadPool extends ThreadPoolExecutor {
     }
 
     /**
-     * Creates a new <tt>ThreadPool</tt> to execute the given task.
+     * Creates a new <tt>ThreadPool</tt> to execute the given task. The waiting tasks are
+     * ordered by the {@link Prioritized#getPriority()}, the tasks of the same priority are
+     * executed in newest-first (LIFO) order. The tasks which not implement {@link Prioritized}
+     * are treated as the normal priority and older than any <tt>Prioritized</tt> tasks.
      * @param maxThreads The maximum number of threads to allow in this pool.
      * @param priority The priority to run the work thread at. The value supplied must be from
      * {@link Process} and not from {@link Thread}.
@@ -76,17 +84,82 @@ public class ThreadPool extends ThreadPoolExecutor {
      * @hide
      */
     public static ThreadPool createImageThreadPool(int maxThreads, int priority) {
-        return new ThreadPool(maxThreads, 60, TimeUnit.SECONDS, "ImagePool-", priority);
+        return createImageThreadPool("ImagePool-", maxThreads, priority);
+    }
+
+    /**
+     * Like as {@link #createImageThreadPool(int, int)}, but the work threads
+     * are named with the specified <em>namePrefix</em>.
+     * @param namePrefix The name prefix of the work threads.
+     * @param maxThreads The maximum number of threads to allow in this pool.
+     * @param priority The priority to run the work thread at. The value supplied must be from
+     * {@link Process} and not from {@link Thread}.
+     * @return A {@link ThreadPool} instance.
+     * @hide
+     */
+    public static ThreadPool createImageThreadPool(String namePrefix, int maxThreads, int priority) {
+        return new ThreadPool(maxThreads, 60, TimeUnit.SECONDS, namePrefix, priority, new PriorityBlockingQueue<Runnable>(64, ThreadPool::compare));
+    }
+
+    /**
+     * Dumps the state of this thread pool.
+     * @param printer The {@link Printer}.
+     * @param name The name of this thread pool to dump.
+     */
+    public final void dump(Printer printer, String name) {
+        DeviceUtils.dumpSummary(printer, new StringBuilder(130), 130, " Dumping %s [ threads = %d, maxThreads = %d, active = %d, queued = %d, completed = %d ] ", name, getPoolSize(), getMaximumPoolSize(), getActiveCount(), getQueue().size(), getCompletedTaskCount());
     }
 
     /**
      * Constructor
      */
     /* package */ ThreadPool(int maxThreads, long keepAliveTime, TimeUnit unit, String namePrefix, int priority) {
-        super(maxThreads, maxThreads, keepAliveTime, unit, new LinkedBlockingQueue<Runnable>(), new PriorityThreadFactory(namePrefix + maxThreads + "-thread-", priority));
+        this(maxThreads, keepAliveTime, unit, namePrefix, priority, new LinkedBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Constructor
+     */
+    /* package */ ThreadPool(int maxThreads, long keepAliveTime, TimeUnit unit, String namePrefix, int priority, BlockingQueue<Runnable> workQueue) {
+        super(maxThreads, maxThreads, keepAliveTime, unit, workQueue, new PriorityThreadFactory(namePrefix + maxThreads + "-thread-", priority));
         allowCoreThreadTimeOut(true);
     }
 
+    /**
+     * Compares the two tasks, the higher priority and the newer task first.
+     * @see Comparator#compare(Object, Object)
+     */
+    private static int compare(Runnable one, Runnable another) {
+        final int priority1 = (one instanceof Prioritized ? ((Prioritized)one).getPriority() : 0);
+        final int priority2 = (another instanceof Prioritized ? ((Prioritized)another).getPriority() : 0);
+        if (priority1 != priority2) {
+            return (priority1 > priority2 ? -1 : 1);
+        }
+
+        final long sequence1 = (one instanceof Prioritized ? ((Prioritized)one).getSequence() : 0);
+        final long sequence2 = (another instanceof Prioritized ? ((Prioritized)another).getSequence() : 0);
+        return Long.compare(sequence2, sequence1);
+    }
+
+    /**
+     * Interface <tt>Prioritized</tt> used to order the tasks of the
+     * thread pool created by {@link ThreadPool#createImageThreadPool}.
+     */
+    public static interface Prioritized {
+        /**
+         * Returns the priority of this task. The higher priority task executed first.
+         * @return The priority. The normal priority is <tt>0</tt>.
+         */
+        int getPriority();
+
+        /**
+         * Returns the sequence number of this task. The tasks of the same
+         * priority are executed in descending order of the sequence number.
+         * @return The sequence number, typically increases on each submission.
+         */
+        long getSequence();
+    }
+
     /**
      * Class <tt>SerialExecutor</tt> is an implementation of an {@link Executor}.
      */
@@ -1,6 +1,10 @@
 package android.ext.content;
 
 import android.ext.cache.Cache;
+import android.ext.cache.ExpiringLruCache;
+import android.ext.cache.StatsCounter;
+import android.ext.concurrent.ThreadPool;
+import android.ext.concurrent.ThreadPool.Prioritized;
 import android.ext.util.DebugUtils;
 import android.ext.util.DeviceUtils;
 import android.ext.util.Pools;
@@ -8,10 +12,13 @@ import android.ext.util.Pools.Pool;
 import android.support.annotation.UiThread;
 import android.support.annotation.WorkerThread;
 import android.util.Printer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Class <tt>AsyncLoader</tt> allows to load the resource on a background
@@ -31,9 +38,25 @@ public abstract class AsyncLoader<Key, Params, Value> {
     public static final int FLAG_IGNORE_MEMORY_CACHE = 0x08000000;    /* flags 0x0F000000 */
 
     /**
-     * FLAG_MASK = ~(FLAG_IGNORE_MEMORY_CACHE | FLAG_DUMP_OPTIONS | CONFIG_MASK);
+     * The low priority of the load task, the task is executed after the normal
+     * and high priority tasks. <p>Note: The priority of the load task is honored
+     * by the thread pool created by {@link ThreadPool#createImageThreadPool}.</p>
      */
-    private static final int FLAG_MASK = 0xF30FFFFF;
+    public static final int PRIORITY_LOW  = 0x01000000;    /* flags 0x0F000000 */
+
+    /**
+     * The high priority of the load task, the task is executed before the normal
+     * and low priority tasks. The normal priority is <tt>0</tt>.
+     * @see #PRIORITY_LOW
+     */
+    public static final int PRIORITY_HIGH = 0x02000000;    /* flags 0x0F000000 */
+
+    protected static final int PRIORITY_MASK = 0x03000000;
+
+    /**
+     * FLAG_MASK = ~(FLAG_IGNORE_MEMORY_CACHE | FLAG_DUMP_OPTIONS | PRIORITY_MASK | CONFIG_MASK);
+     */
+    private static final int FLAG_MASK = 0xF00FFFFF;
 
     private static final int RUNNING  = 0;
     private static final int PAUSED   = 1;
@@ -41,10 +64,15 @@ public abstract class AsyncLoader<Key, Params, Value> {
 
     /* package */ final Pool<Task> mTaskPool;
     /* package */ final Cache<Key, Value> mCache;
+    /* package */ final Map<Object, LoadTask> mRefreshingTasks;
+    /* package */ final LoadStatsCounter mStats;
 
     private volatile int mState;
+    private int mCoalescedCount;
+    private long mRefreshAfterWrite;
     private final Executor mExecutor;
     private final Map<Object, Task> mRunningTasks;
+    private final Map<Object, LoadTask> mInflightTasks;
 
     /**
      * Constructor
@@ -70,6 +98,9 @@ public abstract class AsyncLoader<Key, Params, Value> {
         mExecutor = executor;
         mTaskPool = taskPool;
         mRunningTasks = new HashMap<Object, Task>();
+        mInflightTasks = new HashMap<Object, LoadTask>();
+        mRefreshingTasks = new HashMap<Object, LoadTask>();
+        mStats = new LoadStatsCounter();
     }
 
     /**
@@ -111,17 +142,33 @@ public abstract class AsyncLoader<Key, Params, Value> {
             if (validateCache(flags)) {
                 final Value value = mCache.get(key);
                 if (value != null) {
-                    bindValue(binder, key, params, target, value, flags);
+                    if (isRefreshNeeded(key, value)) {
+                        refreshValue(key, params, target, value, flags, binder);
+                    } else {
+                        bindValue(binder, key, params, target, value, flags);
+                    }
+
                     return;
                 }
             }
 
             // Loads the value on a background thread.
             if (!isTaskRunning(key, target)) {
-                binder.bindValue(key, params, target, null, flags);
+                final Value value = (validateCache(flags) ? onCacheMiss(key, params, flags) : null);
+                binder.bindValue(key, params, target, value, (value != null ? 0 : flags));
                 final LoadTask task = obtain(key, params, target, flags, binder);
                 mRunningTasks.put(target, task);
-                mExecutor.execute(task);
+
+                // Attaches the target to the running load of the same key, if exists.
+                final LoadTask primary = mInflightTasks.get(key);
+                if (primary != null && !primary.isCancelled() && primary.mValue == null && ((primary.mFlags ^ flags) & ~PRIORITY_MASK) == 0 && matchParams((Params[])primary.mParams, params)) {
+                    primary.addWaiter(task);
+                    promoteTask(primary, flags);
+                    ++mCoalescedCount;
+                } else {
+                    mInflightTasks.put(key, task);
+                    execute(task);
+                }
             }
         }
     }
@@ -227,8 +274,60 @@ public abstract class AsyncLoader<Key, Params, Value> {
     @UiThread
     public final boolean cancelTask(Object target, boolean mayInterruptIfRunning) {
         DebugUtils.__checkUIThread("cancelTask");
-        final Task task = mRunningTasks.remove(target);
-        return (task != null && task.cancel(mayInterruptIfRunning));
+        final LoadTask task = (LoadTask)mRunningTasks.remove(target);
+        return (task != null && task.cancelTarget(mayInterruptIfRunning));
+    }
+
+    /**
+     * Returns whether the task of the specified <em>target</em> is loading.
+     * <p><b>Note: This method must be invoked on the UI thread.</b></p>
+     * @param target The target to find the task.
+     * @return <tt>true</tt> if the task is loading, <tt>false</tt> if the task
+     * has been completed, cancelled or does not exist.
+     */
+    @UiThread
+    protected final boolean isLoading(Object target) {
+        final Task task = mRunningTasks.get(target);
+        return (mState != SHUTDOWN && task != null && !task.isCancelled());
+    }
+
+    /**
+     * Returns the number of the loads which attached to a running load of the
+     * same key, instead of starting a new load. <p><b>Note: This method must
+     * be invoked on the UI thread.</b></p>
+     * @return The number of the coalesced loads.
+     */
+    @UiThread
+    public final int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * Sets the time in milliseconds after the value was put into the cache that the value becomes
+     * eligible for refresh-ahead. When the {@link #load} finds a stale value in the cache, the
+     * stale value is bind immediately and reloaded on a background thread, then the new value
+     * is bind again with {@link Binder#STATE_REFRESHED}. The concurrent refreshes of the same
+     * key are deduplicated, all of the targets are bound again. <p>Note: The default {@link #isRefreshNeeded} implementation
+     * requires the cache of this loader is an {@link ExpiringLruCache}.</p>
+     * @param refreshAfterWrite The refresh time in milliseconds or <tt>0</tt> to disable the
+     * refresh-ahead. Typically less than the time-to-live of the <tt>ExpiringLruCache</tt>.
+     * @see #getRefreshAfterWrite()
+     */
+    @UiThread
+    public final void setRefreshAfterWrite(long refreshAfterWrite) {
+        DebugUtils.__checkUIThread("setRefreshAfterWrite");
+        DebugUtils.__checkError(refreshAfterWrite < 0, "Invalid parameter - refreshAfterWrite(" + refreshAfterWrite + ") must be >= 0");
+        DebugUtils.__checkWarning(refreshAfterWrite > 0 && !(mCache instanceof ExpiringLruCache), "AsyncLoader", "The cache is not an ExpiringLruCache, the refresh-ahead has no effect unless the isRefreshNeeded is overridden.");
+        mRefreshAfterWrite = refreshAfterWrite;
+    }
+
+    /**
+     * Returns the refresh-ahead time in milliseconds of this loader.
+     * @return The refresh time or <tt>0</tt> if the refresh-ahead is disabled.
+     * @see #setRefreshAfterWrite(long)
+     */
+    public final long getRefreshAfterWrite() {
+        return mRefreshAfterWrite;
     }
 
     /**
@@ -247,6 +346,17 @@ public abstract class AsyncLoader<Key, Params, Value> {
         return mCache;
     }
 
+    /**
+     * Returns the {@link LoadStatsCounter} associated with this loader. The latencies
+     * of the queue wait and the bind of each load are recorded by this loader, the
+     * other stages are recorded by the subclasses in {@link #loadInBackground}.
+     * @return The <tt>LoadStatsCounter</tt>.
+     * @see LoadStatsCounter#snapshot()
+     */
+    public final LoadStatsCounter getLoadStatsCounter() {
+        return mStats;
+    }
+
     @UiThread
     public final void dump(Printer printer) {
         DebugUtils.__checkUIThread("dump");
@@ -254,12 +364,14 @@ public abstract class AsyncLoader<Key, Params, Value> {
         final int size = mRunningTasks.size();
         if (size > 0) {
             final StringBuilder result = new StringBuilder(80);
-            DeviceUtils.dumpSummary(printer, result, 80, " Dumping Running Tasks [ size = %d ] ", size);
+            DeviceUtils.dumpSummary(printer, result, 80, " Dumping Running Tasks [ size = %d, inflight = %d, coalesced = %d ] ", size, mInflightTasks.size(), mCoalescedCount);
             for (Entry<Object, Task> entry : mRunningTasks.entrySet()) {
                 result.setLength(0);
                 printer.println(DeviceUtils.toString(entry.getKey(), result.append("  ")).append(" ==> ").append(entry.getValue()).toString());
             }
         }
+
+        mStats.snapshot().dump(printer);
     }
 
     /**
@@ -303,6 +415,49 @@ public abstract class AsyncLoader<Key, Params, Value> {
         DebugUtils.__checkDebug(true, getClass().getName(), "shutdown()");
     }
 
+    /**
+     * Called on the UI thread to test the cached <em>value</em> should be reloaded on a
+     * background thread. The default implementation returns <tt>true</tt> if the value
+     * was put into the {@link ExpiringLruCache} at least {@link #getRefreshAfterWrite()}
+     * milliseconds ago.
+     * @param key The key, passed earlier by {@link #load}.
+     * @param value The value found in the cache.
+     * @return <tt>true</tt> if the <em>value</em> should be refreshed, <tt>false</tt> otherwise.
+     * @see #setRefreshAfterWrite(long)
+     */
+    @UiThread
+    protected boolean isRefreshNeeded(Key key, Value value) {
+        return (mRefreshAfterWrite > 0 && mCache instanceof ExpiringLruCache && ((ExpiringLruCache<Key, Value>)mCache).getAge(key) >= mRefreshAfterWrite);
+    }
+
+    /**
+     * Called on the UI thread when the value of the <em>key</em> is not found in the memory
+     * cache, before the value is loaded on a background thread. The returned value is bind
+     * to the target while the value is loading. The default implementation returns <tt>null</tt>.
+     * @param key The key, passed earlier by {@link #load}.
+     * @param params The parameters, passed earlier by {@link #load}.
+     * @param flags Loading flags, passed earlier by {@link #load}.
+     * @return The value to bind while loading, or <tt>null</tt> to bind the placeholder.
+     */
+    @UiThread
+    protected Value onCacheMiss(Key key, Params[] params, int flags) {
+        return null;
+    }
+
+    /**
+     * Called on the UI thread to test the two loads of the same key and flags are
+     * equivalent, so the later load can attach to the running load instead of
+     * starting a new load. The default implementation compares the elements of
+     * the two arrays.
+     * @param params The parameters of the running load.
+     * @param otherParams The parameters of the later load.
+     * @return <tt>true</tt> if the loads are equivalent, <tt>false</tt> otherwise.
+     */
+    @UiThread
+    protected boolean matchParams(Params[] params, Params[] otherParams) {
+        return Arrays.equals(params, otherParams);
+    }
+
     /**
      * Called on the UI thread when the load task is being recycled.
      * @param params The parameters to recycle, passed earlier by {@link #load}.
@@ -376,6 +531,8 @@ public abstract class AsyncLoader<Key, Params, Value> {
 
             mRunningTasks.clear();
         }
+
+        mInflightTasks.clear();
     }
 
     /**
@@ -388,13 +545,76 @@ public abstract class AsyncLoader<Key, Params, Value> {
             if (task.mKey.equals(key)) {
                 return true;
             } else {
-                task.cancel(false);
+                task.cancelTarget(false);
             }
         }
 
         return false;
     }
 
+    /**
+     * Binds the stale <em>value</em> to the <em>target</em> and reloads it on a background thread.
+     */
+    @UiThread
+    private void refreshValue(Key key, Params[] params, Object target, Value value, int flags, Binder binder) {
+        if (isTaskRunning(key, target)) {
+            // The target is already loading or refreshing the value.
+            binder.bindValue(key, params, target, value, flags);
+            onRecycle(params);
+        } else {
+            binder.bindValue(key, params, target, value, flags);
+            final LoadTask task = obtain(key, params, target, flags, binder);
+            task.mValue = value;
+            mRunningTasks.put(target, task);
+
+            // Attaches the target to the running refresh of the same key, if exists.
+            final LoadTask primary = mRefreshingTasks.get(key);
+            if (primary != null && !primary.isCancelled()) {
+                primary.addWaiter(task);
+            } else {
+                mRefreshingTasks.put(key, task);
+                execute(task);
+            }
+        }
+    }
+
+    /**
+     * Executes the <em>task</em> with a new sequence number, so the newest
+     * task is executed first by the priority thread pool.
+     */
+    @UiThread
+    private void execute(LoadTask task) {
+        task.mSequence = ++LoadTask.sSequence;
+        task.mSubmitTime = System.nanoTime();
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Raises the priority of the <em>task</em> to the priority of the <em>flags</em>, if
+     * the <em>task</em> has not started. The <em>task</em> is re-queued with new priority.
+     */
+    @UiThread
+    private void promoteTask(LoadTask task, int flags) {
+        final int oldFlags = task.mFlags;
+        task.mFlags = ((oldFlags & ~PRIORITY_MASK) | (flags & PRIORITY_MASK));
+        if (task.getPriority() > LoadTask.getPriority(oldFlags) && mExecutor instanceof ThreadPoolExecutor && ((ThreadPoolExecutor)mExecutor).remove(task)) {
+            execute(task);
+        } else {
+            task.mFlags = oldFlags;
+        }
+    }
+
+    /**
+     * Removes the cancelled <em>task</em> from the queue of the executor eagerly,
+     * if it has not started. The removed task is completed on the calling thread.
+     */
+    @UiThread
+    /* package */ final void removeTask(LoadTask task) {
+        if (mExecutor instanceof ThreadPoolExecutor && ((ThreadPoolExecutor)mExecutor).remove(task)) {
+            task.onPostExecute(null);
+        }
+    }
+
     /**
      * Retrieves a new {@link LoadTask} from the task pool. Allows us to avoid allocating new tasks in many cases.
      */
@@ -424,19 +644,61 @@ public abstract class AsyncLoader<Key, Params, Value> {
     /**
      * Class <tt>LoadTask</tt> is an implementation of a {@link Task}.
      */
-    /* package */ static final class LoadTask extends Task {
+    /* package */ static final class LoadTask extends Task implements Prioritized {
+        /* package */ static long sSequence;
+
         /* package */ int mFlags;
+        /* package */ long mSequence;
+        /* package */ long mSubmitTime;
+        /* package */ boolean mDetached;
+        /* package */ LoadTask mPrimary;
+        /* package */ ArrayList<LoadTask> mWaiters;
         /* package */ Object mKey;
+        /* package */ Object mValue;
         /* package */ Object mTarget;
         /* package */ Binder mBinder;
         /* package */ AsyncLoader mLoader;
 
+        @Override
+        public int getPriority() {
+            return getPriority(mFlags);
+        }
+
+        @Override
+        public long getSequence() {
+            return mSequence;
+        }
+
+        /**
+         * Returns the priority of the task from the specified <em>flags</em>.
+         */
+        /* package */ static int getPriority(int flags) {
+            switch (flags & PRIORITY_MASK) {
+            case PRIORITY_HIGH:
+                return 1;
+
+            case PRIORITY_LOW:
+                return -1;
+
+            default:
+                return 0;
+            }
+        }
+
         @Override
         /* package */ Object doInBackground(Object params) {
+            mLoader.mStats.record(LoadStatsCounter.STAGE_QUEUE, System.nanoTime() - mSubmitTime);
             mLoader.waitResumeIfPaused();
             Object value = null;
             if (!mLoader.isTaskCancelled(this)) {
+                // Records the load time of the cache miss, If the cache is recording statistics.
+                final StatsCounter stats = (mLoader.validateCache(mFlags) ? mLoader.mCache.getStatsCounter() : null);
+                final long startTime = (stats != null ? System.nanoTime() : 0);
                 value = mLoader.loadInBackground(this, mKey, (Object[])params, mFlags);
+                if (stats != null) {
+                    stats.recordLoad(System.nanoTime() - startTime);
+                }
+
                 if (value != null && mLoader.validateCache(mFlags)) {
                     mLoader.mCache.put(mKey, value);
                 }
@@ -447,9 +709,62 @@ public abstract class AsyncLoader<Key, Params, Value> {
 
         @Override
         /* package */ void onPostExecute(Object value) {
+            final long startTime = System.nanoTime();
             final Object[] params = (Object[])mParams;
-            if (!mLoader.isTaskCancelled(mTarget, this)) {
-                mBinder.bindValue(mKey, params, mTarget, value, mFlags | Binder.STATE_LOAD_FROM_BACKGROUND);
+            if (mValue == null) {
+                if (mLoader.mInflightTasks.get(mKey) == this) {
+                    mLoader.mInflightTasks.remove(mKey);
+                }
+
+                if (!mDetached && !mLoader.isTaskCancelled(mTarget, this)) {
+                    mBinder.bindValue(mKey, params, mTarget, value, mFlags | Binder.STATE_LOAD_FROM_BACKGROUND);
+                }
+
+                // Binds the value to the targets which attached to this task.
+                if (mWaiters != null) {
+                    for (int i = 0, size = mWaiters.size(); i < size; ++i) {
+                        final LoadTask waiter = mWaiters.get(i);
+                        final Object[] waiterParams = (Object[])waiter.mParams;
+                        if (!mLoader.isTaskCancelled(waiter.mTarget, waiter)) {
+                            waiter.mBinder.bindValue(mKey, waiterParams, waiter.mTarget, value, mFlags | Binder.STATE_LOAD_FROM_BACKGROUND);
+                        }
+
+                        mLoader.onRecycle(waiterParams);
+                        waiter.recycle(mLoader.mTaskPool);
+                    }
+
+                    mWaiters.clear();
+                }
+            } else {
+                // The refresh-ahead task, rebinds the value if it has changed.
+                if (mLoader.mRefreshingTasks.get(mKey) == this) {
+                    mLoader.mRefreshingTasks.remove(mKey);
+                }
+
+                final boolean changed = (value != null && !value.equals(mValue));
+                if (changed && !mDetached && !mLoader.isTaskCancelled(mTarget, this)) {
+                    mBinder.bindValue(mKey, params, mTarget, value, mFlags | Binder.STATE_LOAD_FROM_BACKGROUND | Binder.STATE_REFRESHED);
+                }
+
+                // Rebinds the value to the targets which attached to this task.
+                if (mWaiters != null) {
+                    for (int i = 0, size = mWaiters.size(); i < size; ++i) {
+                        final LoadTask waiter = mWaiters.get(i);
+                        final Object[] waiterParams = (Object[])waiter.mParams;
+                        if (changed && !mLoader.isTaskCancelled(waiter.mTarget, waiter)) {
+                            waiter.mBinder.bindValue(mKey, waiterParams, waiter.mTarget, value, mFlags | Binder.STATE_LOAD_FROM_BACKGROUND | Binder.STATE_REFRESHED);
+                        }
+
+                        mLoader.onRecycle(waiterParams);
+                        waiter.recycle(mLoader.mTaskPool);
+                    }
+
+                    mWaiters.clear();
+                }
+            }
+
+            if (value != null) {
+                mLoader.mStats.record(LoadStatsCounter.STAGE_BIND, System.nanoTime() - startTime);
             }
 
             // Recycles this task.
@@ -457,9 +772,61 @@ public abstract class AsyncLoader<Key, Params, Value> {
             recycle(mLoader.mTaskPool);
         }
 
+        /**
+         * Attaches the <em>waiter</em> to this task. The <em>waiter</em> is
+         * never executed, it is bound when this task has been completed.
+         */
+        /* package */ final void addWaiter(LoadTask waiter) {
+            if (mWaiters == null) {
+                mWaiters = new ArrayList<LoadTask>();
+            }
+
+            waiter.mPrimary = this;
+            mWaiters.add(waiter);
+        }
+
+        /**
+         * Cancels the target of this task. The shared load is cancelled
+         * only when no other targets are waiting for it.
+         */
+        /* package */ final boolean cancelTarget(boolean mayInterruptIfRunning) {
+            if (mPrimary != null) {
+                final boolean result = cancel(false);
+                if (mPrimary.mDetached && !mPrimary.hasWaiters() && mPrimary.cancel(mayInterruptIfRunning)) {
+                    mLoader.removeTask(mPrimary);
+                }
+
+                return result;
+            } else if (hasWaiters()) {
+                // Keeps loading for the other targets.
+                mDetached = true;
+                return true;
+            } else if (cancel(mayInterruptIfRunning)) {
+                mLoader.removeTask(this);
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private boolean hasWaiters() {
+            if (mWaiters != null) {
+                for (int i = 0, size = mWaiters.size(); i < size; ++i) {
+                    if (!mWaiters.get(i).isCancelled()) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
         private void recycle(Pool<Task> taskPool) {
             clearForRecycle();
+            mDetached = false;
+            mPrimary = null;
             mKey = null;
+            mValue  = null;
             mTarget = null;
             mBinder = null;
             mLoader = null;
@@ -476,6 +843,12 @@ public abstract class AsyncLoader<Key, Params, Value> {
          */
         int STATE_LOAD_FROM_BACKGROUND = 0x80000000;    /* state 0xF0000000 */
 
+        /**
+         * Indicates the value is reloaded by the refresh-ahead, the
+         * <em>target</em> has already bound the stale value.
+         */
+        int STATE_REFRESHED = 0x40000000;    /* state 0xF0000000 */
+
         /**
          * Binds the specified <em>value</em> to the specified <em>target</em> on the
          * UI thread.
@@ -0,0 +1,73 @@
+package android.ext.content;
+
+import static android.ext.content.LoadStatsCounter.STAGE_COUNT;
+import android.ext.util.LatencyHistogram;
+import android.util.Printer;
+
+/**
+ * Class <tt>LoadStats</tt> is an immutable snapshot of the latencies of each stage
+ * of the loads of an {@link AsyncLoader}.
+ * @author Garfield
+ * @see LoadStatsCounter#snapshot()
+ */
+public final class LoadStats {
+    private static final String[] STAGE_NAMES = { "queue", "fileCache", "network", "decode", "bind" };
+
+    /**
+     * The number of the latencies in each bucket of the {@link LatencyHistogram} of each stage.
+     */
+    private final long[][] mCounts;
+
+    /**
+     * The total time of each stage, in nanoseconds.
+     */
+    private final long[] mTotalTimes;
+
+    /**
+     * Constructor
+     */
+    /* package */ LoadStats(long[][] counts, long[] totalTimes) {
+        mCounts = counts;
+        mTotalTimes = totalTimes;
+    }
+
+    /**
+     * Returns the number of the recorded latencies of the specified <em>stage</em>.
+     * @param stage The stage. One of {@link LoadStatsCounter} <tt>STAGE_XXX</tt> constants.
+     * @return The number of the recorded latencies.
+     */
+    public final long count(int stage) {
+        return LatencyHistogram.count(mCounts[stage]);
+    }
+
+    /**
+     * Returns the total time of the specified <em>stage</em>.
+     * @param stage The stage. One of {@link LoadStatsCounter} <tt>STAGE_XXX</tt> constants.
+     * @return The total time in nanoseconds.
+     */
+    public final long totalTime(int stage) {
+        return mTotalTimes[stage];
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of the specified <em>percentile</em> of the
+     * latencies of the specified <em>stage</em>.
+     * @param stage The stage. One of {@link LoadStatsCounter} <tt>STAGE_XXX</tt> constants.
+     * @param percentile The percentile in range [0 - 1.0].
+     * @return The latency in milliseconds.
+     * @see LatencyHistogram#percentile(long[], float)
+     */
+    public final long percentile(int stage, float percentile) {
+        return LatencyHistogram.percentile(mCounts[stage], percentile);
+    }
+
+    public final void dump(Printer printer) {
+        final StringBuilder result = new StringBuilder(120);
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            if (count(i) > 0) {
+                result.setLength(0);
+                printer.println(LatencyHistogram.toString(result.append("  ").append(STAGE_NAMES[i]).append(' '), mCounts[i], mTotalTimes[i]).toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package android.ext.content;
+
+import android.ext.util.LatencyHistogram;
+
+/**
+ * Class <tt>LoadStatsCounter</tt> accumulates the latencies of each stage of the loads
+ * of an {@link AsyncLoader}. The recording is always enabled, each record costs two
+ * atomic increments. This class is thread-safely.
+ * @author Garfield
+ * @see LoadStats
+ */
+public final class LoadStatsCounter {
+    /**
+     * The time of the load task waiting in the queue of the executor.
+     */
+    public static final int STAGE_QUEUE = 0;
+
+    /**
+     * The time of looking up the file cache.
+     */
+    public static final int STAGE_FILE_CACHE = 1;
+
+    /**
+     * The time of fetching the data from the network.
+     */
+    public static final int STAGE_NETWORK = 2;
+
+    /**
+     * The time of decoding the data.
+     */
+    public static final int STAGE_DECODE = 3;
+
+    /**
+     * The time of binding the loaded value to the targets on the UI thread.
+     */
+    public static final int STAGE_BIND = 4;
+
+    /**
+     * The number of the stages.
+     */
+    public static final int STAGE_COUNT = 5;
+
+    private final LatencyHistogram[] mStages;
+
+    /**
+     * Constructor
+     */
+    public LoadStatsCounter() {
+        mStages = new LatencyHistogram[STAGE_COUNT];
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            mStages[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the latency of the specified <em>stage</em>.
+     * @param stage The stage. One of <tt>STAGE_XXX</tt> constants.
+     * @param latency The latency in nanoseconds.
+     */
+    public final void record(int stage, long latency) {
+        mStages[stage].record(latency);
+    }
+
+    /**
+     * Resets all statistics of this counter to zero.
+     */
+    public final void reset() {
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            mStages[i].reset();
+        }
+    }
+
+    /**
+     * Returns an immutable snapshot of the current statistics of this counter.
+     * @return The {@link LoadStats}.
+     */
+    public final LoadStats snapshot() {
+        final long[][] counts = new long[STAGE_COUNT][];
+        final long[] totalTimes = new long[STAGE_COUNT];
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            counts[i] = mStages[i].getCounts();
+            totalTimes[i] = mStages[i].getTotalTime();
+        }
+
+        return new LoadStats(counts, totalTimes);
+    }
+}
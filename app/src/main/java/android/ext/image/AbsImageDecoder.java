@@ -2,6 +2,7 @@ package android.ext.image;
 
 import android.content.Context;
 import android.ext.image.ImageLoader.ImageDecoder;
+import android.ext.util.ByteArrayBuffer;
 import android.ext.util.DebugUtils;
 import android.ext.util.UriUtils;
 import android.graphics.Bitmap;
@@ -39,7 +40,9 @@ public abstract class AbsImageDecoder<Image> implements ImageDecoder<Image> {
      * <li>file ({@link #SCHEME_FILE})</li>
      * <li>content ({@link #SCHEME_CONTENT})</li>
      * <li>android.asset ({@link #SCHEME_ANDROID_ASSET})</li>
-     * <li>android.resource ({@link #SCHEME_ANDROID_RESOURCE})</li></ul>
+     * <li>android.resource ({@link #SCHEME_ANDROID_RESOURCE})</li>
+     * <li>byte[] (the encoded image data)</li>
+     * <li>{@link ByteArrayBuffer} (the encoded image data)</li></ul>
      * @param uri The uri to decode.
      * @param target The target, passed earlier by {@link ImageLoader#load}.
      * @param params The parameters, passed earlier by {@link ImageLoader#load}.
@@ -107,13 +110,22 @@ public abstract class AbsImageDecoder<Image> implements ImageDecoder<Image> {
     /**
      * Decodes a {@link Bitmap} from the specified <em>uri</em>.
      * @param context The <tt>Context</tt>.
-     * @param uri The uri to decode.
+     * @param uri The uri or the encoded image data (<tt>byte[]</tt> or
+     * <tt>ByteArrayBuffer</tt>) to decode.
      * @param opts May be <tt>null</tt>. The {@link Options} to use for decoding.
      * @return The <tt>Bitmap</tt>, or <tt>null</tt> if the image data cannot be decode.
      * @throws Exception if an error occurs while decode from <em>uri</em>.
      */
     @WorkerThread
     protected Bitmap decodeBitmap(Object uri, Options opts) throws Exception {
+        if (uri instanceof byte[]) {
+            final byte[] data = (byte[])uri;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+        } else if (uri instanceof ByteArrayBuffer) {
+            final ByteArrayBuffer data = (ByteArrayBuffer)uri;
+            return BitmapFactory.decodeByteArray(data.array(), 0, data.size(), opts);
+        }
+
         try (final InputStream is = UriUtils.openInputStream(mModule.mContext, uri)) {
             return BitmapFactory.decodeStream(is, null, opts);
         }
@@ -3,17 +3,27 @@ package android.ext.image;
 import static android.ext.image.ImageModule.PARAMETERS;
 import static android.ext.image.ImageModule.PARAMS_LENGTH;
 import static android.ext.image.ImageModule.PLACEHOLDER;
+import static android.ext.image.ImageModule.SOURCE;
 import android.annotation.TargetApi;
 import android.ext.cache.Cache;
 import android.ext.content.AsyncLoader;
 import android.ext.content.AsyncLoader.Binder;
 import android.ext.image.params.Parameters;
+import android.ext.image.params.SizeParameters;
 import android.ext.util.DebugUtils;
+import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.support.annotation.UiThread;
+import android.support.annotation.WorkerThread;
+import android.view.View;
 import java.io.File;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * An abstract class that performs asynchronous loading of images.
@@ -33,11 +43,42 @@ public abstract class AbsImageLoader<Image> extends AsyncLoader<Object, Object,
     private static final int RGBA_F16  = 0x00300000;
     private static final int CONFIG_MASK = 0x00F00000;
 
+    /**
+     * The minimum and maximum size bucket of the memory cache keys, in pixels.
+     */
+    private static final int MIN_SIZE_BUCKET = 64;
+    private static final int MAX_SIZE_BUCKET = 4096;
+
+    /**
+     * The default maximum number of the outstanding preloads.
+     */
+    private static final int DEFAULT_MAX_PRELOADS = 4;
+
     /**
      * The {@link LoadRequest}.
      */
     private final LoadRequest mRequest;
 
+    /**
+     * The maximum number of the outstanding preloads.
+     */
+    private int mMaxPreloads;
+
+    /**
+     * Whether to prepare the decoded bitmaps to draw on the worker thread.
+     */
+    private boolean mPrepareToDraw;
+
+    /**
+     * The uris of the outstanding preloads, each uri is also the target of its preload.
+     */
+    private final Set<Object> mPreloads;
+
+    /**
+     * The {@link Binder} used to complete the preloads.
+     */
+    private final Binder<Object, Object, Image> mPreloadBinder;
+
     /**
      * The {@link ImageModule}.
      */
@@ -53,6 +94,13 @@ public abstract class AbsImageLoader<Image> extends AsyncLoader<Object, Object,
 
         mModule  = module;
         mRequest = new LoadRequest();
+        mPreloads = new HashSet<Object>();
+        mMaxPreloads = DEFAULT_MAX_PRELOADS;
+        mPreloadBinder = (key, params, target, value, state) -> {
+            if (value != null || (state & STATE_LOAD_FROM_BACKGROUND) != 0) {
+                mPreloads.remove(target);
+            }
+        };
     }
 
     /**
@@ -75,6 +123,10 @@ public abstract class AbsImageLoader<Image> extends AsyncLoader<Object, Object,
     @UiThread
     public final LoadRequest load(Object uri) {
         DebugUtils.__checkUIThread("load");
+        if (mModule.mSizeController != null) {
+            mModule.mSizeController.schedule();
+        }
+
         mRequest.mUri = resolveUri(uri);
         mRequest.mFlags  = 0;
         mRequest.mBinder = this;
@@ -95,6 +147,126 @@ public abstract class AbsImageLoader<Image> extends AsyncLoader<Object, Object,
         return loadSync(resolveUri(uri), convert(config), parameters);
     }
 
+    /**
+     * Sets the maximum number of the outstanding preloads. The preloads beyond
+     * this number are ignored. The default maximum number is <tt>4</tt>.
+     * @param maxPreloads The maximum number of the outstanding preloads.
+     * @see LoadRequest#preload()
+     */
+    public final void setMaxPreloads(int maxPreloads) {
+        DebugUtils.__checkError(maxPreloads < 0, "Invalid parameter - maxPreloads(" + maxPreloads + ") must be >= 0");
+        mMaxPreloads = maxPreloads;
+    }
+
+    /**
+     * Sets whether to call {@link Bitmap#prepareToDraw()} on the worker thread after the
+     * bitmap has been loaded. The GPU upload of the bitmap is started in the background,
+     * instead of on the first draw of the bitmap. The HARDWARE bitmaps are already uploaded
+     * and are not prepared. The default value is <tt>false</tt>.
+     * @param prepareToDraw <tt>true</tt> to prepare the loaded bitmaps to draw.
+     * @see LoadRequest#config(Config)
+     */
+    public final void setPrepareToDraw(boolean prepareToDraw) {
+        mPrepareToDraw = prepareToDraw;
+    }
+
+    /**
+     * Returns the number of the outstanding preloads.
+     * @return The number of the outstanding preloads.
+     */
+    @UiThread
+    public final int getPreloadCount() {
+        prunePreloads();
+        return mPreloads.size();
+    }
+
+    /**
+     * Returns whether the preload of the specified <em>uri</em> is outstanding.
+     * <p><b>Note: This method must be invoked on the UI thread.</b></p>
+     * @param uri The uri, passed earlier by {@link #load(Object)}.
+     * @return <tt>true</tt> if the preload is outstanding, <tt>false</tt> if
+     * the preload has been completed or cancelled.
+     * @see LoadRequest#preload()
+     */
+    @UiThread
+    public final boolean isPreloading(Object uri) {
+        uri = resolveUri(uri);
+        if (uri == null || !mPreloads.contains(uri)) {
+            return false;
+        }
+
+        if (isLoading(uri)) {
+            return true;
+        }
+
+        // The preload task has been cancelled by other than the cancelPreload.
+        mPreloads.remove(uri);
+        return false;
+    }
+
+    /**
+     * Cancels the outstanding preload of the specified <em>uri</em>.
+     * <p><b>Note: This method must be invoked on the UI thread.</b></p>
+     * @param uri The uri, passed earlier by {@link #load(Object)}.
+     * @return <tt>true</tt> if the preload was cancelled, <tt>false</tt> otherwise.
+     * @see LoadRequest#preload()
+     */
+    @UiThread
+    public final boolean cancelPreload(Object uri) {
+        uri = resolveUri(uri);
+        return (uri != null && mPreloads.remove(uri) && cancelTask(uri, false));
+    }
+
+    /**
+     * Removes the images of the specified <em>uri</em> from the memory cache,
+     * including the images of all size buckets.
+     * @param uri The uri to remove.
+     * @return The image mapped by <em>uri</em> or <tt>null</tt> if there was no mapping.
+     */
+    @Override
+    public Image remove(Object uri) {
+        final Cache<Object, Image> cache = getCache();
+        if (cache != null) {
+            for (Object key : cache.snapshot().keySet()) {
+                if (key instanceof SizeKey && ((SizeKey)key).mUri.equals(uri)) {
+                    cache.remove(key);
+                }
+            }
+        }
+
+        return super.remove(uri);
+    }
+
+    /**
+     * Returns the best available size of the same uri, if the <em>key</em> is a
+     * {@link SizeKey}. The memory cache is searched in a snapshot, so the probes
+     * are not recorded to the statistics or the access order of the cache.
+     */
+    @Override
+    protected Image onCacheMiss(Object key, Object[] params, int flags) {
+        if (!(key instanceof SizeKey)) {
+            return null;
+        }
+
+        final Image image = findCachedSize(getCache().snapshot(), (SizeKey)key);
+        if (image instanceof Bitmap && mModule.getBitmapPool() == null) {
+            // Downscales from the cached image instead of decoding it, the bitmap
+            // can't be recycled to the bitmap pool while it is downscaling.
+            params[SOURCE] = image;
+        }
+
+        return image;
+    }
+
+    /**
+     * Compares the decode {@link Parameters} only, the placeholders are
+     * bound to each target and do not affect the loaded image.
+     */
+    @Override
+    protected boolean matchParams(Object[] params, Object[] otherParams) {
+        return (params[PARAMETERS] == otherParams[PARAMETERS] || (params[PARAMETERS] != null && params[PARAMETERS].equals(otherParams[PARAMETERS])));
+    }
+
     @Override
     protected final void onRecycle(Object[] params) {
         ImageModule.__checkParameters(params, PARAMS_LENGTH - 1);
@@ -102,6 +274,19 @@ public abstract class AbsImageLoader<Image> extends AsyncLoader<Object, Object,
         mModule.mParamsPool.recycle(params);
     }
 
+    /**
+     * Prepares the loaded <em>image</em> to draw, if {@link #setPrepareToDraw} is enabled.
+     */
+    @WorkerThread
+    /* package */ final void prepareToDraw(Object image) {
+        if (mPrepareToDraw && image instanceof Bitmap && Build.VERSION.SDK_INT >= 24) {
+            final Bitmap bitmap = (Bitmap)image;
+            if (Build.VERSION.SDK_INT < 26 || bitmap.getConfig() != Config.HARDWARE) {
+                bitmap.prepareToDraw();
+            }
+        }
+    }
+
     /**
      * Converts the {@link Config} to a config flag.
      * @see #parseConfig(int)
@@ -144,6 +329,77 @@ public abstract class AbsImageLoader<Image> extends AsyncLoader<Object, Object,
         }
     }
 
+    /**
+     * Returns the memory cache key of the <em>uri</em>. If the decode parameters is a
+     * {@link SizeParameters}, the key includes the size bucket of the decode size, which
+     * is the size of the <em>target</em> (if it is a laid out <tt>View</tt>) but at least
+     * the minimum size of the parameters. Otherwise returns the <em>uri</em>.
+     */
+    /* package */ static Object computeKey(Object uri, Object target, Object[] params) {
+        if (uri != null && params[PARAMETERS] instanceof SizeParameters) {
+            final SizeParameters parameters = (SizeParameters)params[PARAMETERS];
+            int size = Math.max(parameters.getMinWidth(), parameters.getMinHeight());
+            if (target instanceof View) {
+                final View view = (View)target;
+                size = Math.max(size, Math.max(view.getWidth(), view.getHeight()));
+            }
+
+            if (size > 0) {
+                return new SizeKey(uri, computeSizeBucket(size));
+            }
+        }
+
+        return uri;
+    }
+
+    /**
+     * Returns the size bucket of the <em>size</em>, the next power of two
+     * in the range [{@link #MIN_SIZE_BUCKET}, {@link #MAX_SIZE_BUCKET}].
+     */
+    /* package */ static int computeSizeBucket(int size) {
+        return (size <= MIN_SIZE_BUCKET ? MIN_SIZE_BUCKET : Math.min(Integer.highestOneBit(size - 1) << 1, MAX_SIZE_BUCKET));
+    }
+
+    /**
+     * Finds the best available image of the <em>key's</em> uri in the <em>snapshot</em>
+     * of the memory cache. The larger size buckets are preferred over the un-sized image,
+     * and then the smaller.
+     * @return The image, or <tt>null</tt> if no image of the uri is cached.
+     */
+    private static <Image> Image findCachedSize(Map<Object, Image> snapshot, SizeKey key) {
+        Image image;
+        for (int size = key.mSize << 1; size <= MAX_SIZE_BUCKET; size <<= 1) {
+            if ((image = snapshot.get(new SizeKey(key.mUri, size))) != null) {
+                return image;
+            }
+        }
+
+        if ((image = snapshot.get(key.mUri)) != null) {
+            return image;
+        }
+
+        for (int size = key.mSize >> 1; size >= MIN_SIZE_BUCKET; size >>= 1) {
+            if ((image = snapshot.get(new SizeKey(key.mUri, size))) != null) {
+                return image;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the preloads whose task has been cancelled by other than the
+     * {@link #cancelPreload}, so they are no longer counted as outstanding.
+     */
+    private void prunePreloads() {
+        final Iterator<Object> itor = mPreloads.iterator();
+        while (itor.hasNext()) {
+            if (!isLoading(itor.next())) {
+                itor.remove();
+            }
+        }
+    }
+
     /**
      * Resolves an empty (0-length) string to <tt>null</tt>.
      */
@@ -207,6 +463,20 @@ public abstract class AbsImageLoader<Image> extends AsyncLoader<Object, Object,
             return this;
         }
 
+        /**
+         * Sets the priority to load image. The waiting requests are loaded
+         * in order of the priority, and the newest request first within the
+         * same priority.
+         * @param priority The priority. May be <tt>0</tt>, {@link #PRIORITY_LOW}
+         * or {@link #PRIORITY_HIGH}.
+         * @return This request.
+         */
+        public final LoadRequest priority(int priority) {
+            DebugUtils.__checkError((priority & ~PRIORITY_MASK) != 0 || priority == PRIORITY_MASK, "Invalid parameter - priority = 0x" + Integer.toHexString(priority));
+            mFlags = ((mFlags & ~PRIORITY_MASK) | priority);
+            return this;
+        }
+
         /**
          * Sets the desired {@link Config} to decode bitmap.
          * @param config The config to decode.
@@ -284,23 +554,87 @@ public abstract class AbsImageLoader<Image> extends AsyncLoader<Object, Object,
         }
 
         /**
-         * Loads the image with the arguments supplied to this request.
+         * Loads the image with the arguments supplied to this request. If the parameters
+         * is a {@link SizeParameters}, the image is cached by the uri and the size bucket
+         * of the decode size of the <em>target</em>. When the image of the size bucket is not cached, the best
+         * available size of the same uri is bound immediately while the image is loading.
          * @param target The <tt>Object</tt> to bind.
          */
         public final void into(Object target) {
-            load(mUri, target, mFlags, mBinder, mParams);
-        }
-
-//        /**
-//         * preloads the image with the arguments supplied to this request.
-//         */
-//        public final void preload() {
-//            DebugUtils.__checkError(mUri == null, "Invalid parameter - uri == null");
-//            DebugUtils.__checkWarning(getCache() == null, "AbsImageLoader", "No image cache, invoking this method has no effect.");
-//            DebugUtils.__checkWarning((mFlags & FLAG_IGNORE_MEMORY_CACHE) != 0, "AbsImageLoader", "The FLAG_IGNORE_MEMORY_CACHE is set, invoking this method has no effect.");
-//            if (getCache() != null && (mFlags & FLAG_IGNORE_MEMORY_CACHE) == 0) {
-//                load(mUri, mUri, mFlags, Binder.emptyBinder(), mParams);
-//            }
-//        }
+            final Object key = computeKey(mUri, target, mParams);
+            load(key, target, mFlags, mBinder, mParams);
+        }
+
+        /**
+         * Preloads the image with the arguments supplied to this request into the memory
+         * and file cache, without binding it to any target. If the parameters is a {@link
+         * SizeParameters}, the image is cached by the uri and the size bucket of the minimum
+         * size of the parameters, which is the same key as {@link #into} a target of the same
+         * size bucket, so that load attaches to this preload. The preload is executed with the
+         * {@link #PRIORITY_LOW}, unless the {@link #priority(int)} is specified. If the number
+         * of the outstanding preloads reaches the {@link #setMaxPreloads maximum}, this request
+         * is ignored.
+         * @return <tt>true</tt> if the image is cached or preloading, <tt>false</tt> otherwise.
+         * @see AbsImageLoader#cancelPreload(Object)
+         */
+        public final boolean preload() {
+            DebugUtils.__checkError(mUri == null, "Invalid parameter - uri == null");
+            DebugUtils.__checkWarning(getCache() == null, "AbsImageLoader", "No image cache, invoking this method has no effect.");
+            DebugUtils.__checkWarning((mFlags & FLAG_IGNORE_MEMORY_CACHE) != 0, "AbsImageLoader", "The FLAG_IGNORE_MEMORY_CACHE is set, invoking this method has no effect.");
+            if (mPreloads.size() >= mMaxPreloads) {
+                prunePreloads();
+            }
+
+            if (getCache() == null || (mFlags & FLAG_IGNORE_MEMORY_CACHE) != 0 || (!mPreloads.contains(mUri) && mPreloads.size() >= mMaxPreloads)) {
+                onRecycle(mParams);
+                return false;
+            }
+
+            if ((mFlags & PRIORITY_MASK) == 0) {
+                mFlags |= PRIORITY_LOW;
+            }
+
+            mPreloads.add(mUri);
+            load(computeKey(mUri, mUri, mParams), mUri, mFlags, mPreloadBinder, mParams);
+            return true;
+        }
+    }
+
+    /**
+     * Class <tt>SizeKey</tt> is the memory cache key of an image, keyed by
+     * the uri and the size bucket of the target.
+     */
+    /* package */ static final class SizeKey {
+        /* package */ final int mSize;
+        /* package */ final Object mUri;
+
+        /* package */ SizeKey(Object uri, int size) {
+            mUri  = uri;
+            mSize = size;
+        }
+
+        @Override
+        public int hashCode() {
+            return mUri.hashCode() * 31 + mSize;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+
+            if (object instanceof SizeKey) {
+                final SizeKey key = (SizeKey)object;
+                return (mSize == key.mSize && mUri.equals(key.mUri));
+            }
+
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return mUri + "#" + mSize;
+        }
     }
 }
@@ -1,20 +1,44 @@
 package android.ext.image;
 
+import static android.ext.content.LoadStatsCounter.STAGE_DECODE;
+import static android.ext.content.LoadStatsCounter.STAGE_FILE_CACHE;
+import static android.ext.content.LoadStatsCounter.STAGE_NETWORK;
+import static android.ext.image.ImageModule.PARAMETERS;
+import static android.ext.image.ImageModule.SOURCE;
 import static java.net.HttpURLConnection.HTTP_OK;
 import android.ext.cache.Cache;
 import android.ext.cache.FileCache;
+import android.ext.cache.LruByteArrayCache;
+import android.ext.concurrent.ThreadPool.Prioritized;
+import android.ext.content.AsyncTask;
 import android.ext.content.Task;
+import android.ext.image.AbsImageLoader.SizeKey;
+import android.ext.image.params.Parameters;
 import android.ext.net.DownloadRequest;
+import android.ext.net.DownloadRequest.DownloadCallback;
+import android.ext.util.ByteArrayBuffer;
 import android.ext.util.DebugUtils;
 import android.ext.util.FileUtils;
 import android.ext.util.MessageDigests;
 import android.ext.util.MessageDigests.Algorithm;
 import android.ext.util.StringUtils;
 import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.graphics.BitmapFactory.Options;
 import android.support.annotation.WorkerThread;
 import android.util.Log;
 import android.widget.ImageView;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class <tt>ImageLoader</tt> allows to load the image from the URI on a background
@@ -42,11 +66,21 @@ public class ImageLoader<Image> extends AbsImageLoader<Image> {
      */
     private final Loader<Image> mLoader;
 
+    /**
+     * The {@link LruByteArrayCache} used to store the encoded image data.
+     */
+    private final LruByteArrayCache<String> mEncodedCache;
+
     /**
      * The {@link ImageDecoder} used to decode image.
      */
     protected final ImageDecoder<Image> mDecoder;
 
+    /**
+     * The sequence number of the {@link DecodeTask}.
+     */
+    private static final AtomicLong sSequence = new AtomicLong();
+
     /**
      * Constructor
      * @param module The {@link ImageModule}.
@@ -58,12 +92,17 @@ public class ImageLoader<Image> extends AbsImageLoader<Image> {
         super(module, imageCache);
 
         mDecoder = decoder;
-        mLoader  = (fileCache != null ? new FileCacheLoader(fileCache) : new URLLoader());
+        mLoader  = (fileCache != null ? new FileCacheLoader(fileCache, module.mDerivativeCache) : new URLLoader());
+        mEncodedCache = (imageCache != null ? module.mEncodedCache : null);
     }
 
     @Override
     public Image remove(Object uri) {
         mLoader.remove(uri);
+        if (mEncodedCache != null) {
+            mEncodedCache.remove(uri.toString());
+        }
+
         return super.remove(uri);
     }
 
@@ -79,11 +118,92 @@ public class ImageLoader<Image> extends AbsImageLoader<Image> {
 
     @Override
     protected Image loadInBackground(Task task, Object uri, Object[] params, int flags) {
+        final Image result = loadImage(task, uri, params, flags);
+        prepareToDraw(result);
+        return result;
+    }
+
+    @WorkerThread
+    private Image loadImage(Task task, Object uri, Object[] params, int flags) {
+        if (uri instanceof SizeKey) {
+            // Downscales the cached larger image of the same uri, If exists.
+            final Image result = scaleImage(task, params);
+            if (result != null) {
+                return result;
+            }
+
+            uri = ((SizeKey)uri).mUri;
+        }
+
         final byte[] buffer = mModule.mBufferPool.obtain();
         try {
             final Object target = getTarget(task);
             final String uriString = uri.toString();
-            return (matchScheme(uriString) ? mLoader.load(task, uriString, target, params, flags, buffer) : mDecoder.decodeImage(uri, target, params, flags, buffer));
+            if (!matchScheme(uriString)) {
+                return executeDecode(uri, target, params, flags, buffer);
+            }
+
+            // Decodes the image from the encoded data cache, If exists.
+            final Image result = decodeEncodedImage(uriString, target, params, flags, buffer);
+            return (result != null ? result : mLoader.load(task, uriString, target, params, flags, buffer));
+        } finally {
+            mModule.mBufferPool.recycle(buffer);
+        }
+    }
+
+    /**
+     * Downscales the cached larger bitmap, passed earlier by {@link AbsImageLoader.LoadRequest#into}
+     * to the size of the target. The size is computed by the decode {@link Parameters}.
+     * @return The scaled image, or <tt>null</tt> if no cached larger bitmap or needs not downscale.
+     */
+    @WorkerThread
+    private Image scaleImage(Task task, Object[] params) {
+        final Object target;
+        if (params.length <= SOURCE || !(params[SOURCE] instanceof Bitmap) || (target = getTarget(task)) == null) {
+            return null;
+        }
+
+        final Bitmap source = (Bitmap)params[SOURCE];
+        final Options opts  = mModule.mOptionsPool.obtain();
+        try {
+            opts.outWidth  = source.getWidth();
+            opts.outHeight = source.getHeight();
+            ImageModule.<Parameters>getParameters(params).computeSampleSize(target, opts);
+            final float scale = (opts.inDensity > opts.inTargetDensity && opts.inTargetDensity > 0 ? (float)opts.inTargetDensity / opts.inDensity : 1.0f) / Math.max(opts.inSampleSize, 1);
+            if (scale >= 1.0f || source.isRecycled()) {
+                return null;
+            }
+
+            return (Image)Bitmap.createScaledBitmap(source, Math.max((int)(opts.outWidth * scale + 0.5f), 1), Math.max((int)(opts.outHeight * scale + 0.5f), 1), true);
+        } catch (RuntimeException e) {
+            DebugUtils.__checkLogError(true, "ImageLoader", "Couldn't scale image - " + source, e);
+            return null;
+        } finally {
+            opts.outWidth  = opts.outHeight = 0;
+            opts.inDensity = opts.inTargetDensity = opts.inSampleSize = 0;
+            mModule.mOptionsPool.recycle(opts);
+        }
+    }
+
+    /**
+     * Loads the image from the file cache of this loader on the calling thread.
+     * This method never loads the image from the network, it used to warm up the
+     * memory cache when the application starts.
+     * @param url The url to load.
+     * @param params The parameters to decode the image.
+     * @param flags Loading flags.
+     * @return The image, or <tt>null</tt> if the image file is not cached or decode failed.
+     * @see ImageModule#warmUp(int, Parameters, int, long, long)
+     */
+    @WorkerThread
+    /* package */ final Image loadFromCache(String url, Object[] params, int flags) {
+        if (!matchScheme(url)) {
+            return null;
+        }
+
+        final byte[] buffer = mModule.mBufferPool.obtain();
+        try {
+            return mLoader.loadFromCache(url, params, flags, buffer);
         } finally {
             mModule.mBufferPool.recycle(buffer);
         }
@@ -118,13 +238,139 @@ public class ImageLoader<Image> extends AbsImageLoader<Image> {
         try {
             final DownloadRequest request = new DownloadRequest(url).connectTimeout(30000).readTimeout(30000);
             request.__checkDumpHeaders = false;
-            return (request.download(imageFile, task, buffer) == HTTP_OK && !isTaskCancelled(task) ? mDecoder.decodeImage(imageFile, target, params, flags, buffer) : null);
+            final long startTime  = System.nanoTime();
+            final int statusCode = request.download(imageFile, task, buffer);
+            getLoadStatsCounter().record(STAGE_NETWORK, System.nanoTime() - startTime);
+            return (statusCode == HTTP_OK && !isTaskCancelled(task) ? decodeImage(url, imageFile, target, params, flags, buffer) : null);
         } catch (Exception e) {
             Log.e(getClass().getName(), "Couldn't load image data from - " + url + "\n" + e);
             return null;
         }
     }
 
+    /**
+     * Decodes an image from the <em>imageFile</em>. If the encoded data cache is enabled,
+     * the file contents are read into the encoded data cache and decoded from the memory.
+     * @param url The url of the image.
+     * @param imageFile The image file to decode.
+     * @param target The <tt>Object</tt> to bind, passed earlier by {@link #load}.
+     * @param params The parameters, passed earlier by {@link #load}.
+     * @param flags Loading flags, passed earlier by {@link #load}.
+     * @param buffer The temporary byte array to used for decoding image.
+     * @return The image, or <tt>null</tt> if the image data cannot be decode.
+     */
+    @WorkerThread
+    /* package */ final Image decodeImage(String url, File imageFile, Object target, Object[] params, int flags, byte[] buffer) {
+        final byte[] data = readEncodedData(url, imageFile);
+        return (data != null ? decodeEncodedImage(url, data, target, params, flags, buffer) : executeDecode(imageFile, target, params, flags, buffer));
+    }
+
+    /**
+     * Decodes an image from the encoded data cache.
+     * @return The image, or <tt>null</tt> if the data is not cached or decode failed.
+     */
+    @WorkerThread
+    private Image decodeEncodedImage(String url, Object target, Object[] params, int flags, byte[] buffer) {
+        if (mEncodedCache == null) {
+            return null;
+        }
+
+        final byte[] data = mEncodedCache.get(url);
+        return (data != null ? decodeEncodedImage(url, data, target, params, flags, buffer) : null);
+    }
+
+    @WorkerThread
+    private Image decodeEncodedImage(String url, byte[] data, Object target, Object[] params, int flags, byte[] buffer) {
+        final long startTime = System.nanoTime();
+        final Image result = executeDecode(data, target, params, flags, buffer);
+        mEncodedCache.getStatsCounter().recordLoad(System.nanoTime() - startTime);
+        if (result == null) {
+            // Removes the encoded data from the cache, If decode failed.
+            mEncodedCache.remove(url);
+        }
+
+        return result;
+    }
+
+    /**
+     * Decodes an image from the specified <em>uri</em>. If the decode stage of the {@link ImageModule}
+     * is split, hands off the decoding to the decode stage and waits for it to complete. The calling
+     * thread still owns the <em>buffer</em> until this method returns. If the calling thread is
+     * interrupted while the decoding is running, waits for it to complete before returning, so the
+     * <em>buffer</em> and the image data are never recycled while still in use.
+     * @return The image, or <tt>null</tt> if the image data cannot be decode or interrupted.
+     */
+    @WorkerThread
+    private Image executeDecode(Object uri, Object target, Object[] params, int flags, byte[] buffer) {
+        if (mModule.mDecodeExecutor == null) {
+            return decodeImage(uri, target, params, flags, buffer);
+        }
+
+        final DecodeTask task = new DecodeTask(uri, target, params, flags, buffer);
+        mModule.mDecodeExecutor.execute(task);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    if (task.abandon()) {
+                        // The decoding has not started yet, never touches the buffer.
+                        return null;
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            Log.e(getClass().getName(), "Couldn't decode image - " + uri + "\n" + e.getCause());
+            return null;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Decodes an image from the specified <em>uri</em> on the calling thread,
+     * and records the decode time.
+     */
+    @WorkerThread
+    private Image decodeImage(Object uri, Object target, Object[] params, int flags, byte[] buffer) {
+        final long startTime = System.nanoTime();
+        final Image result = mDecoder.decodeImage(uri, target, params, flags, buffer);
+        getLoadStatsCounter().record(STAGE_DECODE, System.nanoTime() - startTime);
+        return result;
+    }
+
+    /**
+     * Reads the <em>imageFile</em> contents and puts it into the encoded data cache.
+     * The files larger than 1/8 of the cache size are not cached.
+     * @return The encoded data, or <tt>null</tt> if the data is not cached.
+     */
+    @WorkerThread
+    private byte[] readEncodedData(String url, File imageFile) {
+        final long length = imageFile.length();
+        if (mEncodedCache == null || length <= 0 || length > mEncodedCache.maxSize() / 8) {
+            return null;
+        }
+
+        try (final InputStream is = new FileInputStream(imageFile)) {
+            final byte[] data = new byte[(int)length];
+            for (int offset = 0, readBytes; offset < data.length; offset += readBytes) {
+                if ((readBytes = is.read(data, offset, data.length - offset)) == -1) {
+                    return null;
+                }
+            }
+
+            mEncodedCache.put(url, data);
+            return data;
+        } catch (IOException e) {
+            DebugUtils.__checkLogError(true, "ImageLoader", "Couldn't read image file - " + imageFile, e);
+            return null;
+        }
+    }
+
     /**
      * Interface <tt>Loader</tt> used to load image from the specified url.
      */
@@ -149,36 +395,151 @@ public class ImageLoader<Image> extends AbsImageLoader<Image> {
          */
         @WorkerThread
         Image load(Task task, String url, Object target, Object[] params, int flags, byte[] buffer);
+
+        /**
+         * Called on a background thread to load an image from the cache file of the specified
+         * <em>url</em>. The default implementation returns <tt>null</tt>.
+         * @param url The url to load.
+         * @param params The parameters to decode the image.
+         * @param flags Loading flags.
+         * @param buffer The temporary byte array to use for decoding image.
+         * @return The image, or <tt>null</tt> if the cache file is not exists or decode failed.
+         */
+        @WorkerThread
+        default Image loadFromCache(String url, Object[] params, int flags, byte[] buffer) {
+            return null;
+        }
     }
 
     /**
-     * Class <tt>URLLoader</tt> is an implementation of a {@link Loader}.
+     * Class <tt>URLLoader</tt> is an implementation of a {@link Loader}. This class
+     * downloads the image data into a pooled {@link ByteArrayBuffer} and decodes it
+     * from the memory. If the image data is larger than {@link #MAX_STREAM_SIZE},
+     * it falls back to the temp file.
      */
-    /* package */ final class URLLoader implements Loader<Image> {
+    /* package */ final class URLLoader implements Loader<Image>, DownloadCallback<Object, Object> {
+        /**
+         * The maximum number of bytes to download into the memory.
+         */
+        private static final int MAX_STREAM_SIZE = 512 * 1024;
+
         @Override
         @WorkerThread
         public Image load(Task task, String url, Object target, Object[] params, int flags, byte[] buffer) {
-            final File imageFile = new File(mModule.mCacheDir, Integer.toString(Thread.currentThread().hashCode()));
+            final ByteArrayBuffer data = mModule.mStreamPool.obtain();
+            Object result = null;
             try {
-                return loadImage(task, url, imageFile, target, params, flags, buffer);
+                final DownloadRequest request = new DownloadRequest(url).connectTimeout(30000).readTimeout(30000);
+                request.__checkDumpHeaders = false;
+                final long startTime = System.nanoTime();
+                result = request.download(this, task, data, buffer);
+                getLoadStatsCounter().record(STAGE_NETWORK, System.nanoTime() - startTime);
+                return (result != null && !isTaskCancelled(task) ? decodeData(url, result, target, params, flags, buffer) : null);
+            } catch (Exception e) {
+                Log.e(getClass().getName(), "Couldn't load image data from - " + url + "\n" + e);
+                return null;
             } finally {
-                imageFile.delete();
+                if (result instanceof File) {
+                    ((File)result).delete();
+                }
+
+                data.reset();
+                mModule.mStreamPool.recycle(data);
+            }
+        }
+
+        /**
+         * Downloads the image data into the <tt>ByteArrayBuffer</tt>, or the temp file if
+         * the image data is too large.
+         * @return The <tt>ByteArrayBuffer</tt> or the temp <tt>File</tt>, or <tt>null</tt>
+         * if the download failed or cancelled.
+         */
+        @Override
+        @WorkerThread
+        public Object onDownload(URLConnection conn, int statusCode, Object[] params) throws Exception {
+            if (statusCode != HTTP_OK) {
+                return null;
+            }
+
+            final Task task = (Task)params[0];
+            final ByteArrayBuffer data = (ByteArrayBuffer)params[1];
+            final byte[] buffer = (byte[])params[2];
+            try (final InputStream is = conn.getInputStream()) {
+                if (DownloadRequest.getContentLength(conn) <= MAX_STREAM_SIZE) {
+                    // Reads the image data into the memory, until it exceeds the MAX_STREAM_SIZE.
+                    int readBytes;
+                    while (data.size() <= MAX_STREAM_SIZE) {
+                        if (isTaskCancelled(task)) {
+                            return null;
+                        }
+
+                        if ((readBytes = is.read(buffer, 0, buffer.length)) == -1) {
+                            return data;
+                        }
+
+                        data.write(buffer, 0, readBytes);
+                    }
+                }
+
+                // Falls back to the temp file, If the image data is too large.
+                final File imageFile = new File(mModule.mCacheDir, Integer.toString(Thread.currentThread().hashCode()));
+                try (final OutputStream out = new FileOutputStream(imageFile)) {
+                    data.writeTo(out);
+                    FileUtils.copyStream(is, out, task, buffer);
+                }
+
+                return imageFile;
+            }
+        }
+
+        @WorkerThread
+        private Image decodeData(String url, Object result, Object target, Object[] params, int flags, byte[] buffer) {
+            if (result instanceof File) {
+                return decodeImage(url, (File)result, target, params, flags, buffer);
+            }
+
+            // Decodes the image from the encoded data cache, If the image data can be cached.
+            final ByteArrayBuffer data = (ByteArrayBuffer)result;
+            if (mEncodedCache != null && data.size() <= mEncodedCache.maxSize() / 8) {
+                final byte[] encodedData = data.toByteArray();
+                mEncodedCache.put(url, encodedData);
+                return decodeEncodedImage(url, encodedData, target, params, flags, buffer);
             }
+
+            return executeDecode(data, target, params, flags, buffer);
         }
     }
 
     /**
-     * Class <tt>FileCacheLoader</tt> is an implementation of a {@link Loader}.
+     * Class <tt>FileCacheLoader</tt> is an implementation of a {@link Loader}. If the
+     * derivative cache is present, the decoded images are re-encoded and stored in the
+     * derivative cache, keyed by the url, the {@link Parameters} and the config. Later
+     * loads of the same size decode the small derivative file instead of the original.
      */
     private final class FileCacheLoader implements Loader<Image> {
+        /**
+         * The quality of the derivative files.
+         */
+        private static final int DERIVATIVE_QUALITY = 90;
+
+        /**
+         * The {@link Parameters} used to decode the derivative files in original size.
+         */
+        private final Parameters mOriginalParameters;
+
         private final FileCache mCache;
+        private final FileCache mDerivativeCache;
 
         /**
          * Constructor
          * @param cache The {@link FileCache} to store the loaded image files.
+         * @param derivativeCache May be <tt>null</tt>. The {@link FileCache}
+         * to store the decoded images.
          */
-        public FileCacheLoader(FileCache cache) {
+        public FileCacheLoader(FileCache cache, FileCache derivativeCache) {
             mCache = cache;
+            mDerivativeCache = derivativeCache;
+            mOriginalParameters = (derivativeCache != null ? new Parameters(1) : null);
         }
 
         @Override
@@ -194,13 +555,44 @@ public class ImageLoader<Image> extends AbsImageLoader<Image> {
         @Override
         @WorkerThread
         public Image load(Task task, String url, Object target, Object[] params, int flags, byte[] buffer) {
+            if (mDerivativeCache == null) {
+                return loadImageFile(task, url, target, params, flags, buffer);
+            }
+
+            // Decodes the derivative file, If exists. The empty file indicates the
+            // derivative is not smaller than the original image file.
+            final String derivativeKey = computeDerivativeKey(url, target, params, flags, buffer);
+            final File derivativeFile  = mDerivativeCache.get(derivativeKey);
+            if (derivativeFile.length() > 0) {
+                final Image result = decodeDerivative(derivativeKey, derivativeFile, target, params, flags, buffer);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            final Image result = loadImageFile(task, url, target, params, flags, buffer);
+            if (result instanceof Bitmap && !derivativeFile.exists() && !isTaskCancelled(task)) {
+                // Saves the derivative file in background, never delays the bind of the result.
+                final Bitmap bitmap = (Bitmap)result;
+                final int generationId = bitmap.getGenerationId();
+                AsyncTask.SERIAL_EXECUTOR.execute(() -> saveDerivative(derivativeKey, derivativeFile, url, bitmap, generationId));
+            }
+
+            return result;
+        }
+
+        @WorkerThread
+        private Image loadImageFile(Task task, String url, Object target, Object[] params, int flags, byte[] buffer) {
+            final long startTime = System.nanoTime();
             final String hashKey = StringUtils.toHexString(buffer, 0, MessageDigests.computeString(url, buffer, 0, Algorithm.SHA1));
             final File imageFile = mCache.get(hashKey);
+            final boolean exists = imageFile.exists();
+            getLoadStatsCounter().record(STAGE_FILE_CACHE, System.nanoTime() - startTime);
             Image result = null;
 
-            if (imageFile.exists()) {
+            if (exists) {
                 // Decodes the image file, If exists.
-                if ((result = mDecoder.decodeImage(imageFile, target, params, flags, buffer)) != null) {
+                if ((result = decodeImage(url, imageFile, target, params, flags, buffer)) != null) {
                     return result;
                 }
 
@@ -221,6 +613,135 @@ public class ImageLoader<Image> extends AbsImageLoader<Image> {
 
             return result;
         }
+
+        /**
+         * Returns the key of the derivative file, which computed from the <em>url</em>,
+         * the {@link Parameters} and the config of the <em>flags</em>.
+         */
+        private String computeDerivativeKey(String url, Object target, Object[] params, int flags, byte[] buffer) {
+            final Parameters parameters = ImageModule.getParameters(params);
+            final StringBuilder key = new StringBuilder(url.length() + 80).append(url).append('#');
+            (parameters != null ? parameters : Parameters.defaultParameters()).appendKey(target, key).append('#').append(parseConfig(flags));
+            return StringUtils.toHexString(buffer, 0, MessageDigests.computeString(key.toString(), buffer, 0, Algorithm.SHA1));
+        }
+
+        /**
+         * Decodes the derivative file in original size.
+         */
+        private Image decodeDerivative(String derivativeKey, File derivativeFile, Object target, Object[] params, int flags, byte[] buffer) {
+            final Object[] derivativeParams = (params != null ? params.clone() : new Object[PARAMETERS + 1]);
+            derivativeParams[PARAMETERS] = mOriginalParameters;
+            final Image result = executeDecode(derivativeFile, target, derivativeParams, flags, buffer);
+            if (result == null) {
+                // Removes the derivative file from derivative cache, If decode failed.
+                mDerivativeCache.remove(derivativeKey);
+            }
+
+            return result;
+        }
+
+        /**
+         * Re-encodes the <em>bitmap</em> as WebP (if it has alpha) or JPEG, and saves it to
+         * the derivative cache. If the derivative file is not smaller than the original image
+         * file, an empty file is saved instead of it. This method runs in background, so the
+         * derivative is discarded if the <em>bitmap</em> was recycled or reused meanwhile.
+         */
+        private void saveDerivative(String derivativeKey, File derivativeFile, String url, Bitmap bitmap, int generationId) {
+            final File imageFile = mCache.get(StringUtils.toHexString(MessageDigests.computeString(url, Algorithm.SHA1)));
+            if (!imageFile.exists() || derivativeFile.exists() || bitmap.isRecycled()) {
+                // The original image file has been removed, or the derivative has been saved.
+                return;
+            }
+
+            final File tempFile = new File(mModule.mCacheDir, "._derivative_" + Thread.currentThread().hashCode());
+            try {
+                try (final OutputStream out = new FileOutputStream(tempFile)) {
+                    bitmap.compress(bitmap.hasAlpha() ? CompressFormat.WEBP : CompressFormat.JPEG, DERIVATIVE_QUALITY, out);
+                }
+
+                if (bitmap.isRecycled() || bitmap.getGenerationId() != generationId) {
+                    // The bitmap was recycled or reused while compressing.
+                    return;
+                }
+
+                if (tempFile.length() >= imageFile.length()) {
+                    new FileOutputStream(tempFile).close();
+                }
+
+                if (FileUtils.moveFile(tempFile.getPath(), derivativeFile.getPath()) == 0) {
+                    mDerivativeCache.put(derivativeKey, derivativeFile);
+                }
+            } catch (Exception e) {
+                DebugUtils.__checkLogError(true, "ImageLoader", "Couldn't save derivative file - " + derivativeFile, e);
+            } finally {
+                tempFile.delete();
+            }
+        }
+
+        @Override
+        @WorkerThread
+        public Image loadFromCache(String url, Object[] params, int flags, byte[] buffer) {
+            final String hashKey = StringUtils.toHexString(buffer, 0, MessageDigests.computeString(url, buffer, 0, Algorithm.SHA1));
+            final File imageFile = mCache.get(hashKey);
+            return (imageFile.exists() ? decodeImage(url, imageFile, null, params, flags, buffer) : null);
+        }
+    }
+
+    /**
+     * Class <tt>DecodeTask</tt> decodes an image on the decode stage of the {@link ImageModule}.
+     * The tasks are ordered by the priority of the load flags, the newer task first.
+     */
+    private final class DecodeTask extends FutureTask<Image> implements Prioritized {
+        private final int mFlags;
+        private final long mSequence;
+        private final AtomicBoolean mStarted;
+
+        /* package */ DecodeTask(Object uri, Object target, Object[] params, int flags, byte[] buffer) {
+            super(() -> decodeImage(uri, target, params, flags, buffer));
+            mFlags = flags;
+            mSequence = sSequence.incrementAndGet();
+            mStarted  = new AtomicBoolean();
+        }
+
+        @Override
+        public void run() {
+            if (mStarted.compareAndSet(false, true)) {
+                super.run();
+            }
+        }
+
+        /**
+         * Prevents this task from running, if it has not started yet.
+         * @return <tt>true</tt> if this task will never run, <tt>false</tt>
+         * if this task is running or has already completed.
+         */
+        /* package */ final boolean abandon() {
+            if (mStarted.compareAndSet(false, true)) {
+                cancel(false);
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override
+        public int getPriority() {
+            switch (mFlags & PRIORITY_MASK) {
+            case PRIORITY_HIGH:
+                return 1;
+
+            case PRIORITY_LOW:
+                return -1;
+
+            default:
+                return 0;
+            }
+        }
+
+        @Override
+        public long getSequence() {
+            return mSequence;
+        }
     }
 
     /**
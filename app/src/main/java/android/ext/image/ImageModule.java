@@ -13,26 +13,39 @@ import android.content.res.Resources.NotFoundException;
 import android.content.res.TypedArray;
 import android.ext.cache.BitmapPool;
 import android.ext.cache.Cache;
+import android.ext.cache.CacheSizeController;
+import android.ext.cache.ConcurrentLruCache;
 import android.ext.cache.FileCache;
+import android.ext.cache.LfuBitmapCache;
 import android.ext.cache.LinkedBitmapPool;
 import android.ext.cache.LruBitmapCache;
 import android.ext.cache.LruBitmapCache2;
+import android.ext.cache.LruByteArrayCache;
 import android.ext.cache.LruCache;
 import android.ext.cache.LruFileCache;
 import android.ext.cache.LruImageCache;
+import android.ext.cache.ReferenceCache;
+import android.ext.cache.SizeConfigBitmapPool;
+import android.ext.cache.StatsCounter;
 import android.ext.concurrent.ThreadPool;
+import android.ext.content.AsyncLoader;
+import android.ext.content.AsyncTask;
 import android.ext.content.Task;
 import android.ext.content.res.XmlResources;
 import android.ext.content.res.XmlResources.XmlResourceInflater;
 import android.ext.image.AbsImageLoader.LoadRequest;
+import android.ext.image.AbsImageLoader.SizeKey;
 import android.ext.image.binder.GIFImageBinder;
 import android.ext.image.binder.RoundedBitmapBinder;
 import android.ext.image.binder.TransitionBinder;
 import android.ext.image.decoder.BitmapDecoder;
 import android.ext.image.decoder.ContactPhotoDecoder;
 import android.ext.image.decoder.ImageDecoder;
+import android.ext.image.decoder.TiledImageDecoder;
 import android.ext.image.params.Parameters;
+import android.ext.image.params.SizeParameters;
 import android.ext.util.ArrayUtils;
+import android.ext.util.ByteArrayBuffer;
 import android.ext.util.DebugUtils;
 import android.ext.util.DeviceUtils;
 import android.ext.util.FileUtils;
@@ -40,9 +53,11 @@ import android.ext.util.Pools;
 import android.ext.util.Pools.Factory;
 import android.ext.util.Pools.Pool;
 import android.ext.util.ReflectUtils;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory.Options;
 import android.graphics.drawable.Drawable;
 import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.UiThread;
 import android.text.TextUtils;
 import android.util.AttributeSet;
@@ -53,9 +68,18 @@ import android.util.SparseArray;
 import android.util.TypedValue;
 import android.util.Xml;
 import android.widget.ImageView;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -90,11 +114,14 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
 
     /* package */ static final int PARAMETERS  = 0;
     /* package */ static final int PLACEHOLDER = 1;
-    /* package */ static final int PARAMS_LENGTH = 2;
+    /* package */ static final int SOURCE = 2;
+    /* package */ static final int PARAMS_LENGTH = 3;
 
     private static final int MAX_POOL_SIZE = 32;
     private static final int MIN_THREAD_COUNT = 2;
     private static final int MAX_THREAD_COUNT = 4;
+    private static final int MAX_HOT_KEY_COUNT = 64;
+    private static final String HOT_KEYS_FILE = "._hot_keys";
 
     /**
      * A singleton <tt>ImageModule</tt>.
@@ -112,9 +139,14 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
     private final SparseArray mResources;
 
     /* package */ final File mCacheDir;
+    /* package */ final FileCache mDerivativeCache;
+    /* package */ final LruByteArrayCache<String> mEncodedCache;
+    /* package */ final CacheSizeController mSizeController;
     /* package */ final Executor mExecutor;
+    /* package */ final Executor mDecodeExecutor;
     /* package */ final Pool<Task> mTaskPool;
     /* package */ final Pool<byte[]> mBufferPool;
+    /* package */ final Pool<ByteArrayBuffer> mStreamPool;
     /* package */ final Pool<Options> mOptionsPool;
     /* package */ final Pool<Object[]> mParamsPool;
 
@@ -125,20 +157,30 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
      * @param imageCache May be <tt>null</tt>. The {@link Cache} to store the loaded images.
      * @param fileCache May be <tt>null</tt>. The {@link FileCache} to store the loaded image files.
      * @param bitmapPool May be <tt>null</tt>. The {@link BitmapPool} to reuse the bitmap when decoding bitmap.
+     * @param encodedCache May be <tt>null</tt>. The {@link LruByteArrayCache} to store the encoded image data.
+     * @param sizeController May be <tt>null</tt>. The {@link CacheSizeController} to adjust the size of the bitmap cache.
+     * @param derivativeCache May be <tt>null</tt>. The {@link FileCache} to store the decoded images.
+     * @param decodeExecutor May be <tt>null</tt>. The {@link Executor} to decoding images, the load
+     * tasks hand off the decoding to it after the image data has been fetched.
      */
-    /* package */ ImageModule(Context context, Executor executor, Cache imageCache, FileCache fileCache, BitmapPool bitmapPool) {
+    /* package */ ImageModule(Context context, Executor executor, Cache imageCache, FileCache fileCache, BitmapPool bitmapPool, LruByteArrayCache<String> encodedCache, CacheSizeController sizeController, FileCache derivativeCache, Executor decodeExecutor) {
         final int maxPoolSize = ((ThreadPool)executor).getMaximumPoolSize();
         mCacheDir = getCacheDir(context, fileCache);
         mContext  = context;
         mExecutor = executor;
+        mDecodeExecutor = decodeExecutor;
         mFileCache   = fileCache;
         mBitmapPool  = bitmapPool;
         mImageCache  = imageCache;
+        mEncodedCache = encodedCache;
+        mSizeController = sizeController;
+        mDerivativeCache = derivativeCache;
         mResources   = new SparseArray(8);
         mTaskPool    = ImageLoader.newTaskPool(MAX_POOL_SIZE);
         mParamsPool  = Pools.newPool(this, MAX_POOL_SIZE);
         mOptionsPool = Pools.synchronizedPool(Pools.newPool(Options::new, maxPoolSize));
         mBufferPool  = Pools.synchronizedPool(Pools.newPool(() -> new byte[16384], maxPoolSize));
+        mStreamPool  = Pools.synchronizedPool(Pools.newPool(ByteArrayBuffer::new, maxPoolSize));
         mContext.registerComponentCallbacks(this);
     }
 
@@ -231,6 +273,32 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         return (loader != null && loader.cancelTask(target, false));
     }
 
+    /**
+     * Pre-decodes the hot images of the previous run from the file cache into the memory
+     * cache on a background thread with a low priority, never on the image threads. The
+     * keys of the hot images (see {@link Cache#hotKeys(int)}) are saved when the {@link
+     * #onTrimMemory} is called with {@link #TRIM_MEMORY_UI_HIDDEN} or higher. This method is typically called when the
+     * application starts. <p><b>Note: This method must be invoked on the UI thread.</b></p>
+     * @param id The xml resource id of the image loader.
+     * @param parameters May be <tt>null</tt>. The {@link Parameters} to decode the images
+     * which are not cached by a size bucket. The images of a size bucket are decoded to fit
+     * the size bucket.
+     * @param maxCount The maximum number of images to decode.
+     * @param maxTime The maximum time in milliseconds to spend on the decoding.
+     * @param maxBytes The maximum number of bytes of the decoded bitmaps.
+     */
+    @UiThread
+    public final void warmUp(int id, Parameters parameters, int maxCount, long maxTime, long maxBytes) {
+        DebugUtils.__checkUIThread("warmUp");
+        DebugUtils.__checkError(maxCount <= 0 || maxTime <= 0 || maxBytes <= 0, "Invalid parameters - maxCount(" + maxCount + ") <= 0 || maxTime(" + maxTime + ") <= 0 || maxBytes(" + maxBytes + ") <= 0");
+        final Object loader = getResource(id, this);
+        DebugUtils.__checkWarning(!(loader instanceof ImageLoader) || ((ImageLoader)loader).getCache() == null || mFileCache == null, "ImageModule", "The " + loader + " has no memory cache or file cache, invoking this method has no effect.");
+        if (loader instanceof ImageLoader && ((ImageLoader)loader).getCache() != null && mFileCache != null) {
+            // Runs on the background thread pool, never occupies the image threads.
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new WarmUpTask((ImageLoader)loader, parameters, maxCount, maxTime, maxBytes));
+        }
+    }
+
     /**
      * Returns the {@link FileCache} associated with this object.
      * @return The <tt>FileCache</tt> or <tt>null</tt>.
@@ -239,6 +307,15 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         return mFileCache;
     }
 
+    /**
+     * Returns the derivative {@link FileCache} associated with this object.
+     * @return The <tt>FileCache</tt> or <tt>null</tt>.
+     * @see Builder#setDerivativeCacheSize(int, long)
+     */
+    public final FileCache getDerivativeCache() {
+        return mDerivativeCache;
+    }
+
     /**
      * Returns the {@link BitmapPool} associated with this object.
      * @return The <tt>BitmapPool</tt> or <tt>null</tt>.
@@ -247,6 +324,15 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         return mBitmapPool;
     }
 
+    /**
+     * Returns the encoded image data cache associated with this object.
+     * @return The {@link Cache} or <tt>null</tt>.
+     * @see Builder#setEncodedCacheSize(int)
+     */
+    public final Cache<String, byte[]> getEncodedCache() {
+        return mEncodedCache;
+    }
+
     /**
      * Returns the image cache associated with this object.
      * @return The {@link Cache} or <tt>null</tt>.
@@ -286,17 +372,34 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         DebugUtils.__checkStartMethodTracing();
         Pools.BYTE_ARRAY_POOL.clear();
         if (mBitmapPool != null) {
-            mBitmapPool.clear();
+            mBitmapPool.trimMemory(level);
         }
 
         if (mImageCache != null) {
+            if (level >= TRIM_MEMORY_UI_HIDDEN && mFileCache != null) {
+                // Saves the hot keys before the image cache is trimmed.
+                saveHotKeys();
+            }
+
             mImageCache.trimMemory(level);
         }
 
+        if (mEncodedCache != null) {
+            mEncodedCache.trimMemory(level);
+        }
+
+        if (mSizeController != null) {
+            mSizeController.onTrimMemory(level);
+        }
+
         if (mFileCache != null) {
             mFileCache.trimMemory(level);
         }
 
+        if (mDerivativeCache != null) {
+            mDerivativeCache.trimMemory(level);
+        }
+
         if (level >= TRIM_MEMORY_UI_HIDDEN) {
             for (int i = mResources.size() - 1; i >= 0; --i) {
                 final Object value = mResources.valueAt(i);
@@ -309,6 +412,7 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
             mResources.clear();
             mParamsPool.clear();
             mBufferPool.clear();
+            mStreamPool.clear();
             mOptionsPool.clear();
         }
 
@@ -403,6 +507,85 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         return result;
     }
 
+    /**
+     * Saves the keys of the most valuable images on a background thread, in the
+     * order of {@link Cache#hotKeys(int)}. Each key is saved as a line of the uri,
+     * followed by a tab and the size bucket, if the key is a {@link SizeKey}.
+     */
+    private void saveHotKeys() {
+        final List<Object> keys = mImageCache.hotKeys(MAX_HOT_KEY_COUNT);
+        final List<String> hotKeys = new ArrayList<String>(keys.size());
+        for (int i = 0, size = keys.size(); i < size; ++i) {
+            final Object key = keys.get(i);
+            final Object uri = (key instanceof SizeKey ? ((SizeKey)key).mUri : key);
+
+            // Only saves the string uris, the other uris can't be restored.
+            if (uri instanceof String && ((String)uri).indexOf('\n') == -1 && ((String)uri).indexOf('\t') == -1) {
+                final String hotKey = (key instanceof SizeKey ? uri + "\t" + ((SizeKey)key).mSize : (String)uri);
+                if (!hotKeys.contains(hotKey)) {
+                    hotKeys.add(hotKey);
+                }
+            }
+        }
+
+        if (hotKeys.size() > 0) {
+            AsyncTask.SERIAL_EXECUTOR.execute(() -> writeHotKeys(hotKeys));
+        }
+    }
+
+    private void writeHotKeys(List<String> hotKeys) {
+        final File hotKeysFile = new File(mCacheDir.getParent(), HOT_KEYS_FILE);
+        final File tempFile = new File(mCacheDir.getParent(), HOT_KEYS_FILE + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(tempFile), 8192);
+            for (int i = 0, size = hotKeys.size(); i < size; ++i) {
+                writer.write(hotKeys.get(i));
+                writer.write('\n');
+            }
+
+            writer.close();
+            writer = null;
+            if (!tempFile.renameTo(hotKeysFile)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            DebugUtils.__checkLogError(true, "ImageModule", "Couldn't write hot keys - " + hotKeysFile, e);
+        } finally {
+            FileUtils.close(writer);
+        }
+    }
+
+    /**
+     * Reads the keys saved by the {@link #saveHotKeys()}, each key
+     * is either a uri <tt>String</tt> or a {@link SizeKey}.
+     */
+    private List<Object> readHotKeys(int maxCount) {
+        final File hotKeysFile = new File(mCacheDir.getParent(), HOT_KEYS_FILE);
+        final List<Object> hotKeys = new ArrayList<Object>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(hotKeysFile), 8192);
+            for (String line; hotKeys.size() < maxCount && (line = reader.readLine()) != null; ) {
+                final int index = line.indexOf('\t');
+                if (index == -1) {
+                    if (line.length() > 0) {
+                        hotKeys.add(line);
+                    }
+                } else if (index > 0) {
+                    hotKeys.add(new SizeKey(line.substring(0, index), AbsImageLoader.computeSizeBucket(Integer.parseInt(line.substring(index + 1)))));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // The hot keys file is not exists or corrupted, ignore it.
+            DebugUtils.__checkWarning(hotKeysFile.exists(), "ImageModule", "Couldn't read hot keys - " + hotKeysFile + "\n" + e);
+        } finally {
+            FileUtils.close(reader);
+        }
+
+        return hotKeys;
+    }
+
     private ImageLoader.ImageDecoder createImageDecoder(XmlPullParser parser) throws XmlPullParserException, ReflectiveOperationException {
         try {
             // Moves to the first start tag position.
@@ -427,6 +610,9 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
             case "ContactPhotoDecoder":
                 return new ContactPhotoDecoder(this);
 
+            case "TiledImageDecoder":
+                return new TiledImageDecoder(this);
+
             default:
                 return ReflectUtils.newInstance(className, new Class[] { ImageModule.class, AttributeSet.class }, this, Xml.asAttributeSet(parser));
             }
@@ -512,14 +698,26 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         }
 
         final Printer printer = new LogPrinter(Log.DEBUG, "ImageModule");
+        ((ThreadPool)mExecutor).dump(printer, (mDecodeExecutor != null ? "NetworkStage" : "ImagePool"));
+        if (mDecodeExecutor != null) {
+            ((ThreadPool)mDecodeExecutor).dump(printer, "DecodeStage");
+        }
+
         Pools.dumpPool(mTaskPool, printer);
         Pools.dumpPool(mParamsPool, printer);
         Pools.dumpPool(mBufferPool, printer);
         Pools.dumpPool(mOptionsPool, printer);
         Cache.dumpCache(mContext, printer, mImageCache);
+        Cache.dumpCache(mContext, printer, mEncodedCache);
+        if (mSizeController != null) {
+            mSizeController.dump(printer);
+        }
         Cache.dumpCache(mContext, printer, mFileCache);
+        Cache.dumpCache(mContext, printer, mDerivativeCache);
         if (mBitmapPool instanceof LinkedBitmapPool) {
             ((LinkedBitmapPool)mBitmapPool).dump(mContext, printer);
+        } else if (mBitmapPool instanceof SizeConfigBitmapPool) {
+            ((SizeConfigBitmapPool)mBitmapPool).dump(mContext, printer);
         }
 
         final StringBuilder result = new StringBuilder(130);
@@ -542,6 +740,9 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
                 ((TransitionBinder)object).dump(printer, result);
             } else if (object instanceof RoundedBitmapBinder) {
                 ((RoundedBitmapBinder)object).dump(printer, result);
+            } else if (object instanceof AsyncLoader) {
+                printer.println(DeviceUtils.toString(object, result).toString());
+                ((AsyncLoader)object).getLoadStatsCounter().snapshot().dump(printer);
             } else {
                 printer.println(DeviceUtils.toString(object, result).toString());
             }
@@ -563,16 +764,127 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         }
     }
 
+    /**
+     * Class <tt>WarmUpTask</tt> used to pre-decode the hot images
+     * from the file cache into the memory cache.
+     */
+    private final class WarmUpTask implements Runnable {
+        private final long mMaxTime;
+        private final long mMaxBytes;
+        private final int mMaxCount;
+        private final Object[] mParams;
+        private final Object[] mSizeParams;
+        private final ImageLoader mLoader;
+
+        public WarmUpTask(ImageLoader loader, Parameters parameters, int maxCount, long maxTime, long maxBytes) {
+            mLoader   = loader;
+            mMaxTime  = maxTime;
+            mMaxBytes = maxBytes;
+            mMaxCount = maxCount;
+            mParams   = new Object[PARAMS_LENGTH];
+            mSizeParams = new Object[PARAMS_LENGTH];
+            mParams[PARAMETERS] = parameters;
+        }
+
+        @Override
+        public void run() {
+            final int priority = Process.getThreadPriority(Process.myTid());
+            try {
+                DebugUtils.__checkStartMethodTracing();
+                Process.setThreadPriority(THREAD_PRIORITY_BACKGROUND);
+                final List<Object> hotKeys = readHotKeys(mMaxCount);
+                final Cache cache = mLoader.getCache();
+                final Set cachedKeys = cache.snapshot().keySet();
+                final List<Object> images = new ArrayList<Object>(hotKeys.size());
+                final long deadline = SystemClock.uptimeMillis() + mMaxTime;
+                long bytes = 0;
+
+                // Decodes the hot images, the most valuable first.
+                for (int i = 0, size = hotKeys.size(); i < size && bytes < mMaxBytes && SystemClock.uptimeMillis() < deadline && !mLoader.isShutdown(); ++i) {
+                    final Object key = hotKeys.get(i);
+                    final Object image = (cachedKeys.contains(key) ? null : loadFromCache(key));
+                    if (image != null) {
+                        images.add(key);
+                        images.add(image);
+                        if (image instanceof Bitmap) {
+                            bytes += ((Bitmap)image).getAllocationByteCount();
+                        }
+                    }
+                }
+
+                // Puts the images in reverse order, so the most valuable image
+                // is also the most recently used in the memory cache.
+                final Map current = cache.snapshot();
+                for (int i = images.size() - 2; i >= 0; i -= 2) {
+                    final Object key = images.get(i);
+                    if (!current.containsKey(key)) {
+                        cache.put(key, images.get(i + 1));
+                    }
+                }
+
+                DebugUtils.__checkStopMethodTracing("ImageModule", "warmUp - hotKeys = " + hotKeys.size() + ", decoded = " + images.size() / 2 + ", bytes = " + FileUtils.formatFileSize(bytes));
+            } finally {
+                Process.setThreadPriority(priority);
+            }
+        }
+
+        /**
+         * Decodes the image of the <em>key</em> from the file cache. The image of a
+         * {@link SizeKey} is decoded to fit its size bucket, the same as it cached.
+         */
+        private Object loadFromCache(Object key) {
+            if (!(key instanceof SizeKey)) {
+                return mLoader.loadFromCache((String)key, mParams, 0);
+            }
+
+            final SizeKey sizeKey = (SizeKey)key;
+            mSizeParams[PARAMETERS] = new SizeParameters(sizeKey.mSize, sizeKey.mSize);
+            return mLoader.loadFromCache((String)sizeKey.mUri, mSizeParams, 0);
+        }
+    }
+
+    /**
+     * Class <tt>WeakBitmapCache</tt> is an {@link LruBitmapCache}, which adds
+     * the evicted bitmaps to the weak references of the {@link ReferenceCache}.
+     */
+    private static final class WeakBitmapCache extends LruBitmapCache<Object> {
+        /* package */ ReferenceCache<Object, Object> mReferenceCache;
+
+        public WeakBitmapCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, Object key, Bitmap oldValue, Bitmap newValue) {
+            if (evicted && mReferenceCache != null) {
+                mReferenceCache.entryEvicted(key, oldValue);
+            }
+        }
+    }
+
     /**
      * Class <tt>Builder</tt> to creates an {@link ImageModule}.
      */
     public static final class Builder {
         private int mPriority;
         private int mPoolSize;
+        private int mPoolBytes;
         private int mImageSize;
         private int mMaxThreads;
+        private int mNetworkThreads;
+        private int mConcurrencyLevel;
+        private int mEncodedCacheSize;
+        private float mMinScaleMemory;
+        private float mMaxScaleMemory;
+        private Cache mBitmapCache;
+        private boolean mRecordStats;
+        private boolean mWeakReferences;
+        private long mFileCacheBytes;
+        private int mDerivativeSize;
+        private long mDerivativeBytes;
         private Object mFileCache;
         private Object mImageCache;
+        private final List<WeakBitmapCache> mWeakBitmapCaches;
 
         /**
          * The application <tt>Context</tt>.
@@ -586,6 +898,7 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         /* package */ Builder(Context context) {
             mContext  = context;
             mPriority = THREAD_PRIORITY_BACKGROUND + THREAD_PRIORITY_MORE_FAVORABLE;
+            mWeakBitmapCaches = new ArrayList<WeakBitmapCache>(2);
         }
 
         /**
@@ -622,7 +935,26 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         }
 
         /**
-         * Sets the image {@link Cache} to store the loaded images.
+         * Sets the range of the scale of memory of the internal bitmap cache. If set, the
+         * internal bitmap cache starts with the size set by {@link #setScaleMemory(float)}
+         * or {@link #setMemorySize(int)}, then a {@link CacheSizeController} grows the size
+         * while the heap headroom is healthy and shrinks it when the memory is trimmed.
+         * @param minScaleMemory The minimum scale of memory of the bitmap cache.
+         * @param maxScaleMemory The maximum scale of memory of the bitmap cache.
+         * @return This builder.
+         * @see #setScaleMemory(float)
+         */
+        public final Builder setAdaptiveScaleMemory(float minScaleMemory, float maxScaleMemory) {
+            DebugUtils.__checkError(minScaleMemory <= 0 || minScaleMemory > maxScaleMemory || maxScaleMemory >= 1.0f, "Invalid parameters - minScaleMemory(" + minScaleMemory + ") <= 0 || minScaleMemory > maxScaleMemory(" + maxScaleMemory + ") || maxScaleMemory >= 1.0");
+            mMinScaleMemory = minScaleMemory;
+            mMaxScaleMemory = maxScaleMemory;
+            return this;
+        }
+
+        /**
+         * Sets the image {@link Cache} to store the loaded images. For example, pass
+         * a {@link LfuBitmapCache} to use the frequency-aware eviction policy instead
+         * of the LRU.
          * @param cache The image <tt>Cache</tt>.
          * @return This builder.
          */
@@ -638,7 +970,72 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
          * @see #setFileCache(FileCache)
          */
         public final Builder setFileCacheSize(int size) {
+            return setFileCacheSize(size, 0);
+        }
+
+        /**
+         * Sets the maximum number of files and the maximum number of bytes of
+         * all files to allow in the internal {@link FileCache}. The eldest files
+         * will be removed when either bound is exceeded.
+         * @param size The maximum number of files.
+         * @param maxBytes The maximum number of bytes of all files or
+         * <tt>0</tt> if the number of bytes is unlimited.
+         * @return This builder.
+         * @see #setFileCache(FileCache)
+         */
+        public final Builder setFileCacheSize(int size, long maxBytes) {
             mFileCache = size;
+            mFileCacheBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of bytes to allow in the internal encoded image data cache.
+         * If the <em>maxBytes</em> greater than <tt>0</tt>, the encoded data (e.g. JPEG, WebP)
+         * of the network images are kept in a {@link LruByteArrayCache} as a secondary memory
+         * tier. The images evicted from the image cache will be decoded from the memory instead
+         * of the file cache or the network. The encoded cache always records the statistics,
+         * the load time is the time spent to decode from the encoded data.
+         * @param maxBytes The maximum number of bytes.
+         * @return This builder.
+         * @see ImageModule#getEncodedCache()
+         */
+        public final Builder setEncodedCacheSize(int maxBytes) {
+            mEncodedCacheSize = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of files and the maximum number of bytes of all files to
+         * allow in the internal derivative {@link FileCache}. If the <em>size</em> greater
+         * than <tt>0</tt>, the decoded images are re-encoded (WebP or JPEG) and stored in
+         * the derivative cache next to the file cache, keyed by the uri, the decode
+         * parameters and the config. Later loads of the same size decode the small
+         * derivative file instead of the full resolution file. <p>Note: The derivative
+         * cache is used by the image loaders which have the file cache only.</p>
+         * @param size The maximum number of files.
+         * @param maxBytes The maximum number of bytes of all files or <tt>0</tt>
+         * if the number of bytes is unlimited.
+         * @return This builder.
+         * @see ImageModule#getDerivativeCache()
+         */
+        public final Builder setDerivativeCacheSize(int size, long maxBytes) {
+            mDerivativeSize  = size;
+            mDerivativeBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the number of segments of the internal bitmap cache. If the <em>concurrencyLevel</em>
+         * greater than <tt>1</tt> the bitmap cache splits the keys across the segments, each segment
+         * has its own lock. This can be reduce the lock contention of the decoding threads and the
+         * UI thread.
+         * @param concurrencyLevel The number of segments.
+         * @return This builder.
+         * @see ConcurrentLruCache
+         */
+        public final Builder setConcurrencyLevel(int concurrencyLevel) {
+            mConcurrencyLevel = concurrencyLevel;
             return this;
         }
 
@@ -653,6 +1050,33 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
             return this;
         }
 
+        /**
+         * Sets whether the internal image cache keeps the weak references to the evicted
+         * images. If <tt>true</tt> an evicted image which is still reachable (e.g. still
+         * shown in a recycled <tt>ImageView</tt>) will be returned without decoding again.
+         * <p>Note: If <tt>true</tt> the evicted bitmaps are <b>not</b> recycled to the
+         * internal {@link BitmapPool}.</p>
+         * @param weakReferences Whether to keep the weak references.
+         * @return This builder.
+         * @see ReferenceCache
+         */
+        public final Builder setWeakReferences(boolean weakReferences) {
+            mWeakReferences = weakReferences;
+            return this;
+        }
+
+        /**
+         * Sets whether the caches of the image module record the statistics (hits, misses,
+         * evictions, load time etc.) The statistics are printed when the caches are dumped.
+         * @param recordStats <tt>true</tt> to record the statistics, <tt>false</tt> otherwise.
+         * @return This builder.
+         * @see StatsCounter
+         */
+        public final Builder setRecordStats(boolean recordStats) {
+            mRecordStats = recordStats;
+            return this;
+        }
+
         /**
          * Sets the maximum number of bitmaps to allow in the internal {@link BitmapPool}.
          * @param size The maximum number of bitmaps.
@@ -663,6 +1087,20 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
             return this;
         }
 
+        /**
+         * Sets the maximum number of bytes to allow in the internal {@link BitmapPool}.
+         * If the <em>maxBytes</em> greater than <tt>0</tt> the internal bitmap pool is
+         * a {@link SizeConfigBitmapPool}, which is bounded by the total bytes of bitmaps
+         * instead of the number of bitmaps.
+         * @param maxBytes The maximum number of bytes.
+         * @return This builder.
+         * @see #setBitmapPoolSize(int)
+         */
+        public final Builder setBitmapPoolBytes(int maxBytes) {
+            mPoolBytes = maxBytes;
+            return this;
+        }
+
         /**
          * Sets the priority to run the work thread at. The value supplied
          * must be from {@link Process} and not from {@link Thread}.
@@ -676,7 +1114,8 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
         }
 
         /**
-         * Sets the maximum number of threads to allow in the internal thread pool.
+         * Sets the maximum number of threads to allow in the internal thread pool. If
+         * the network stage is split, this is the number of threads of the decode stage.
          * @param maxThreads The maximum number of threads.
          * @return This builder.
          * @see #setThreadPriority(int)
@@ -686,32 +1125,87 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
             return this;
         }
 
+        /**
+         * Sets the maximum number of threads to allow in the network stage. If the number
+         * of threads <tt> > 0</tt>, the images are fetched on a separate I/O thread pool and
+         * then decoded on the internal thread pool, whose size is {@link #setMaximumThreads}.
+         * Typically the network stage has more threads than the decode stage, because the
+         * network threads most time are waiting for I/O. The default value is <tt>0</tt>
+         * (the fetching and decoding are executed on the same thread).
+         * @param networkThreads The maximum number of threads of the network stage.
+         * @return This builder.
+         * @see #setMaximumThreads(int)
+         */
+        public final Builder setNetworkThreads(int networkThreads) {
+            mNetworkThreads = networkThreads;
+            return this;
+        }
+
         /**
          * Creates an {@link ImageModule} with the arguments supplied to this builder.
          * @return The <tt>ImageModule</tt>.
          */
         public final ImageModule build() {
             final int maxThreads = (mMaxThreads > 0 ? mMaxThreads : ArrayUtils.rangeOf(Runtime.getRuntime().availableProcessors(), MIN_THREAD_COUNT, MAX_THREAD_COUNT));
-            final BitmapPool bitmapPool = (mPoolSize > 0 ? new LinkedBitmapPool(mPoolSize) : null);
-            return new ImageModule(mContext, ThreadPool.createImageThreadPool(maxThreads, mPriority), createImageCache(bitmapPool), createFileCache(), bitmapPool);
+            final BitmapPool bitmapPool = createBitmapPool();
+            final Cache imageCache = createImageCache(bitmapPool);
+            final ThreadPool executor = ThreadPool.createImageThreadPool(maxThreads, mPriority);
+            if (mNetworkThreads <= 0) {
+                return new ImageModule(mContext, executor, imageCache, createFileCache(), bitmapPool, createEncodedCache(), createSizeController(), createDerivativeCache(), null);
+            }
+
+            // Splits the network and decode stages, the load tasks are executed on the network stage.
+            final ThreadPool networkExecutor = ThreadPool.createImageThreadPool("ImageNetworkPool-", Math.max(mNetworkThreads, maxThreads), mPriority);
+            return new ImageModule(mContext, networkExecutor, imageCache, createFileCache(), bitmapPool, createEncodedCache(), createSizeController(), createDerivativeCache(), executor);
+        }
+
+        private FileCache createDerivativeCache() {
+            return (mDerivativeSize > 0 ? recordStats(new LruFileCache(FileUtils.getCacheDir(mContext, "._image_derivatives!"), mDerivativeSize, (mDerivativeBytes > 0 ? mDerivativeBytes : Long.MAX_VALUE), true)) : null);
+        }
+
+        private CacheSizeController createSizeController() {
+            if (mMaxScaleMemory <= 0 || mBitmapCache == null) {
+                return null;
+            }
+
+            final long maxMemory = Runtime.getRuntime().maxMemory();
+            return new CacheSizeController(mContext, mBitmapCache, (int)(maxMemory * mMinScaleMemory + 0.5f), (int)(maxMemory * mMaxScaleMemory + 0.5f));
+        }
+
+        private LruByteArrayCache<String> createEncodedCache() {
+            if (mEncodedCacheSize <= 0) {
+                return null;
+            }
+
+            final LruByteArrayCache<String> cache = new LruByteArrayCache<String>(mEncodedCacheSize);
+            cache.setStatsCounter(new StatsCounter());
+            return cache;
+        }
+
+        private BitmapPool createBitmapPool() {
+            if (mPoolBytes > 0) {
+                return new SizeConfigBitmapPool(mPoolBytes);
+            } else {
+                return (mPoolSize > 0 ? new LinkedBitmapPool(mPoolSize) : null);
+            }
         }
 
         private FileCache createFileCache() {
             if (mFileCache == null) {
                 return null;
             } else if (mFileCache instanceof FileCache) {
-                return (FileCache)mFileCache;
+                return recordStats((FileCache)mFileCache);
             } else {
                 final int maxSize = (int)mFileCache;
-                return (maxSize > 0 ? new LruFileCache(FileUtils.getCacheDir(mContext, "._image_cache!"), maxSize) : null);
+                return (maxSize > 0 ? recordStats(new LruFileCache(FileUtils.getCacheDir(mContext, "._image_cache!"), maxSize, (mFileCacheBytes > 0 ? mFileCacheBytes : Long.MAX_VALUE), true)) : null);
             }
         }
 
         private Cache createImageCache(BitmapPool bitmapPool) {
             if (mImageCache == null) {
-                return (mImageSize > 0 ? new LruCache(mImageSize) : null);
+                return (mImageSize > 0 ? recordStats(new LruCache(mImageSize)) : null);
             } else if (mImageCache instanceof Cache) {
-                return (Cache)mImageCache;
+                return recordStats((Cache)mImageCache);
             }
 
             final int maxSize;
@@ -726,13 +1220,53 @@ public final class ImageModule implements ComponentCallbacks2, Factory<Object[]>
             if (maxSize <= 0) {
                 return null;
             } else if (mImageSize <= 0) {
-                return createBitmapCache(maxSize, bitmapPool);
+                return createReferenceCache(createBitmapCache(maxSize, bitmapPool));
             } else {
-                return new LruImageCache(createBitmapCache(maxSize, bitmapPool), new LruCache(mImageSize));
+                return createReferenceCache(recordStats(new LruImageCache(createBitmapCache(maxSize, bitmapPool), recordStats(new LruCache(mImageSize)))));
             }
         }
 
+        private Cache createReferenceCache(Cache cache) {
+            if (!mWeakReferences) {
+                return cache;
+            }
+
+            // Adds the evicted bitmaps of the bitmap caches to the weak references.
+            final ReferenceCache result = new ReferenceCache(cache);
+            for (int i = 0, size = mWeakBitmapCaches.size(); i < size; ++i) {
+                mWeakBitmapCaches.get(i).mReferenceCache = result;
+            }
+
+            mWeakBitmapCaches.clear();
+            return result;
+        }
+
+        private <T extends Cache> T recordStats(T cache) {
+            if (mRecordStats) {
+                cache.setStatsCounter(new StatsCounter());
+            }
+
+            return cache;
+        }
+
         private Cache createBitmapCache(int maxSize, BitmapPool bitmapPool) {
+            if (mConcurrencyLevel <= 1) {
+                return (mBitmapCache = recordStats(createBitmapCacheImpl(maxSize, bitmapPool)));
+            }
+
+            // The ConcurrentLruCache rounds up the concurrencyLevel to a power of 2.
+            final int segments = Integer.highestOneBit(mConcurrencyLevel - 1) << 1;
+            return (mBitmapCache = recordStats(new ConcurrentLruCache(segments, () -> createBitmapCacheImpl(maxSize / segments, bitmapPool))));
+        }
+
+        private LruCache createBitmapCacheImpl(int maxSize, BitmapPool bitmapPool) {
+            if (mWeakReferences) {
+                // The evicted bitmaps may be still referenced by the ReferenceCache, couldn't recycle to reused.
+                final WeakBitmapCache result = new WeakBitmapCache(maxSize);
+                mWeakBitmapCaches.add(result);
+                return result;
+            }
+
             return (bitmapPool != null ? new LruBitmapCache2(maxSize, bitmapPool) : new LruBitmapCache(maxSize));
         }
     }
@@ -0,0 +1,167 @@
+package android.ext.image;
+
+import static android.support.v7.widget.RecyclerView.NO_POSITION;
+import android.ext.image.AbsImageLoader.LoadRequest;
+import android.ext.util.DebugUtils;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.OnScrollListener;
+import java.util.ArrayList;
+
+/**
+ * Class <tt>RecyclerViewPreloader</tt> preloads the images of the items just beyond
+ * the visible items of a {@link RecyclerView} in the scroll direction. The preloads
+ * are executed with low priority and bounded by {@link AbsImageLoader#setMaxPreloads},
+ * the items beyond the bound are preloaded on the later scrolls. The outstanding preloads
+ * are cancelled when the scroll direction reverses.
+ * <h3>Usage</h3>
+ * <p>Here is an example:</p><pre>
+ * public class ImagePreloader extends RecyclerViewPreloader {
+ *     public ImagePreloader(AbsImageLoader&lt;?&gt; loader) {
+ *         super(loader, 6);
+ *     }
+ *
+ *     {@code @Override}
+ *     protected Object getItemUri(int position) {
+ *         return mAdapter.getItem(position).getImageUrl();
+ *     }
+ *
+ *     {@code @Override}
+ *     protected void onPreload(LoadRequest request, int position) {
+ *         request.parameters(R.xml.decode_params);
+ *     }
+ * }
+ *
+ * recyclerView.addOnScrollListener(new ImagePreloader(imageLoader));</pre>
+ * @author Garfield
+ */
+public abstract class RecyclerViewPreloader extends OnScrollListener {
+    private final int mMaxPreloads;
+    private final AbsImageLoader<?> mLoader;
+    private final ArrayList<Object> mPreloadUris;
+
+    private int mStart;
+    private int mEnd;
+    private boolean mForward;
+
+    /**
+     * Constructor
+     * @param loader The {@link AbsImageLoader} to preload images.
+     * @param maxPreloads The number of the items to preload ahead.
+     */
+    public RecyclerViewPreloader(AbsImageLoader<?> loader, int maxPreloads) {
+        DebugUtils.__checkError(loader == null || maxPreloads <= 0, "Invalid parameters - loader == null || maxPreloads(" + maxPreloads + ") <= 0");
+        mLoader = loader;
+        mForward = true;
+        mMaxPreloads = maxPreloads;
+        mPreloadUris = new ArrayList<Object>(maxPreloads);
+        mStart = mEnd = NO_POSITION;
+    }
+
+    /**
+     * Cancels all outstanding preloads of this preloader.
+     */
+    public final void cancelAll() {
+        for (int i = 0, size = mPreloadUris.size(); i < size; ++i) {
+            mLoader.cancelPreload(mPreloadUris.get(i));
+        }
+
+        mPreloadUris.clear();
+        mStart = mEnd = NO_POSITION;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        final int childCount = recyclerView.getChildCount();
+        if ((dx == 0 && dy == 0) || childCount == 0) {
+            return;
+        }
+
+        final boolean forward = (dx > 0 || dy > 0);
+        if (forward != mForward) {
+            // The scroll direction reverses, cancels the outstanding preloads.
+            cancelAll();
+            mForward = forward;
+        }
+
+        final int first = recyclerView.getChildAdapterPosition(recyclerView.getChildAt(0));
+        final int last  = recyclerView.getChildAdapterPosition(recyclerView.getChildAt(childCount - 1));
+        if (first != NO_POSITION && last != NO_POSITION) {
+            final int itemCount = recyclerView.getLayoutManager().getItemCount();
+            if (forward) {
+                // Preloads the items after the last visible item, skips the preloaded items.
+                // Stops at the first item which is not accepted, it is retried next scroll.
+                final int end = Math.min(last + 1 + mMaxPreloads, itemCount);
+                int position = Math.max(last + 1, mEnd);
+                while (position < end && preload(position)) {
+                    ++position;
+                }
+
+                mEnd = position;
+            } else {
+                // Preloads the items before the first visible item, skips the preloaded items.
+                // Stops at the first item which is not accepted, it is retried next scroll.
+                final int start = Math.max(first - mMaxPreloads, 0);
+                int position = (mStart == NO_POSITION ? first : Math.min(first, mStart)) - 1;
+                while (position >= start && preload(position)) {
+                    --position;
+                }
+
+                mStart = position + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the uri of the image to preload at the specified <em>position</em>.
+     * @param position The adapter position of the item.
+     * @return The uri of the image, or <tt>null</tt> if the item has no image.
+     */
+    protected abstract Object getItemUri(int position);
+
+    /**
+     * Called before the image of the item at the specified <em>position</em> is preloaded.
+     * The default implementation do nothing. Subclasses should override this method to
+     * supply the same arguments (e.g. config, parameters) as the item binds its image.
+     * @param request The {@link LoadRequest} to preload.
+     * @param position The adapter position of the item.
+     */
+    protected void onPreload(LoadRequest request, int position) {
+    }
+
+    /**
+     * Removes the uris whose preload has been completed or cancelled.
+     */
+    private void removeCompletedUris() {
+        for (int i = mPreloadUris.size() - 1; i >= 0; --i) {
+            if (!mLoader.isPreloading(mPreloadUris.get(i))) {
+                mPreloadUris.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Preloads the image of the item at the specified <em>position</em>.
+     * @return <tt>true</tt> if the image is cached or preloading, or the item
+     * has no image, <tt>false</tt> if the preload was not accepted.
+     */
+    private boolean preload(int position) {
+        final Object uri = getItemUri(position);
+        if (uri == null) {
+            return true;
+        }
+
+        final LoadRequest request = mLoader.load(uri);
+        onPreload(request, position);
+        if (!request.preload()) {
+            return false;
+        }
+
+        // Tracks every outstanding preload, so the cancelAll never misses it.
+        removeCompletedUris();
+        if (mLoader.isPreloading(uri) && !mPreloadUris.contains(uri)) {
+            mPreloadUris.add(uri);
+        }
+
+        return true;
+    }
+}
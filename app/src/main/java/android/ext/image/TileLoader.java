@@ -0,0 +1,225 @@
+package android.ext.image;
+
+import android.ext.cache.BitmapPool;
+import android.ext.cache.Cache;
+import android.ext.cache.LruBitmapCache;
+import android.ext.cache.LruBitmapCache2;
+import android.ext.content.AsyncLoader;
+import android.ext.content.LoadStatsCounter;
+import android.ext.content.Task;
+import android.ext.util.DebugUtils;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory.Options;
+import android.graphics.Rect;
+import android.support.annotation.UiThread;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+/**
+ * Class <tt>TileLoader</tt> decodes the tiles of the {@link TiledImage} on the
+ * decode executor of the {@link ImageModule}. The decoded tiles are stored in a byte
+ * bounded tile cache, and the tile bitmaps are reused from the {@link BitmapPool}
+ * of the <tt>ImageModule</tt>.
+ * <h3>Usage</h3>
+ * <p>Here is an example:</p><pre>
+ * final TileLoader tileLoader = new TileLoader(module, 16 * 1024 * 1024);
+ * module.load(R.xml.tiled_image_loader)
+ *     .binder(new TiledImageBinder(tileLoader))
+ *     .into(imageView);</pre>
+ * @author Garfield
+ */
+public final class TileLoader extends AsyncLoader<TileLoader.Tile, Object, Bitmap> {
+    /**
+     * The size of the tile in pixels, after the tile was decoded.
+     */
+    public static final int TILE_SIZE = 512;
+
+    /**
+     * The {@link ImageModule}.
+     */
+    private final ImageModule mModule;
+
+    /**
+     * Constructor
+     * @param module The {@link ImageModule}.
+     * @param maxCacheSize The maximum number of bytes to allow in the tile cache.
+     */
+    public TileLoader(ImageModule module, int maxCacheSize) {
+        super((module.mDecodeExecutor != null ? module.mDecodeExecutor : module.mExecutor), createTileCache(module.getBitmapPool(), maxCacheSize), module.mTaskPool);
+        mModule = module;
+    }
+
+    /**
+     * Removes all tiles of the specified <em>image</em> from the tile cache,
+     * the removed tile bitmaps are recycled to the <tt>BitmapPool</tt>.
+     * @param image The {@link TiledImage} to remove.
+     */
+    public final void removeTiles(TiledImage image) {
+        final Cache<Tile, Bitmap> cache = getCache();
+        for (Tile tile : cache.snapshot().keySet()) {
+            if (tile.mImage == image) {
+                cache.remove(tile);
+            }
+        }
+    }
+
+    /**
+     * Loads the specified <em>tile</em>, the <em>binder</em> is called on the UI
+     * thread when the tile has been decoded. <p><b>Note: This method must be
+     * invoked on the UI thread.</b></p>
+     * @param tile The {@link Tile} to load.
+     * @param binder The {@link Binder} used to bind the tile bitmap.
+     */
+    @UiThread
+    /* package */ final void loadTile(Tile tile, Binder<Tile, Object, Bitmap> binder) {
+        load(tile, tile, 0, binder, (Object[])null);
+    }
+
+    @Override
+    protected Bitmap loadInBackground(Task task, Tile tile, Object[] params, int flags) {
+        final Options opts = mModule.mOptionsPool.obtain();
+        final byte[] buffer = mModule.mBufferPool.obtain();
+        try {
+            opts.inMutable = true;
+            opts.inTempStorage = buffer;
+            opts.inSampleSize  = tile.mSampleSize;
+
+            // Retrieves the bitmap from bitmap pool to reuse it. The region decoder keeps the
+            // dimensions of the inBitmap, so only reuses the bitmap of the same tile dimensions.
+            final BitmapPool bitmapPool = mModule.getBitmapPool();
+            if (bitmapPool != null) {
+                final Bitmap bitmap = bitmapPool.get(tile.computeByteCount());
+                if (tile.canReuse(bitmap)) {
+                    opts.inBitmap = bitmap;
+                } else if (bitmap != null) {
+                    bitmapPool.put(bitmap);
+                }
+            }
+
+            final long startTime = System.nanoTime();
+            final Bitmap result = decodeTile(tile, opts);
+            getLoadStatsCounter().record(LoadStatsCounter.STAGE_DECODE, System.nanoTime() - startTime);
+            return result;
+        } catch (Exception e) {
+            Log.e(getClass().getName(), "Couldn't decode tile - " + tile + "\n" + e);
+            return null;
+        } finally {
+            opts.inBitmap  = null;
+            opts.inMutable = false;
+            opts.inSampleSize  = 0;
+            opts.inTempStorage = null;
+            mModule.mBufferPool.recycle(buffer);
+            mModule.mOptionsPool.recycle(opts);
+        }
+    }
+
+    @WorkerThread
+    private static Bitmap decodeTile(Tile tile, Options opts) {
+        final Rect region = new Rect(tile.mLeft, tile.mTop, tile.mRight, tile.mBottom);
+        try {
+            return tile.mImage.mDecoder.decodeRegion(region, opts);
+        } catch (IllegalArgumentException e) {
+            // Decodes the tile again, If decode the tile into inBitmap failed.
+            if (opts.inBitmap == null) {
+                throw e;
+            }
+
+            DebugUtils.__checkLogError(true, "TileLoader", "decodeRegion failed - " + e.getMessage());
+            opts.inBitmap = null;
+            return tile.mImage.mDecoder.decodeRegion(region, opts);
+        }
+    }
+
+    private static Cache<Tile, Bitmap> createTileCache(BitmapPool bitmapPool, int maxCacheSize) {
+        DebugUtils.__checkError(maxCacheSize <= 0, "Invalid parameter - maxCacheSize(" + maxCacheSize + ") must be > 0");
+        return (bitmapPool != null ? new LruBitmapCache2<Tile>(maxCacheSize, bitmapPool) : new LruBitmapCache<Tile>(maxCacheSize));
+    }
+
+    /**
+     * Class <tt>Tile</tt> is a region of the {@link TiledImage} at a sample level.
+     */
+    public static final class Tile {
+        /* package */ final int mTop;
+        /* package */ final int mLeft;
+        /* package */ final int mRight;
+        /* package */ final int mBottom;
+        /* package */ final int mSampleSize;
+        /* package */ final TiledImage mImage;
+
+        /**
+         * Constructor
+         * @param image The {@link TiledImage}.
+         * @param sampleSize The sample size to decode, must be a power of 2.
+         * @param column The column of this tile.
+         * @param row The row of this tile.
+         */
+        /* package */ Tile(TiledImage image, int sampleSize, int column, int row) {
+            final int size = TILE_SIZE * sampleSize;
+            mImage  = image;
+            mLeft   = column * size;
+            mTop    = row * size;
+            mRight  = Math.min(mLeft + size, image.mWidth);
+            mBottom = Math.min(mTop + size, image.mHeight);
+            mSampleSize = sampleSize;
+        }
+
+        /**
+         * Returns the number of bytes of this tile, after it was decoded.
+         */
+        /* package */ final int computeByteCount() {
+            return getDecodedWidth() * getDecodedHeight() * 4;
+        }
+
+        /**
+         * Returns whether the specified <em>bitmap</em> can be used as the inBitmap
+         * to decode this tile. The <em>bitmap</em> must be exactly the decoded size
+         * of this tile and {@link Config#ARGB_8888}.
+         */
+        /* package */ final boolean canReuse(Bitmap bitmap) {
+            return (bitmap != null && bitmap.isMutable() && bitmap.getConfig() == Config.ARGB_8888 && bitmap.getWidth() == getDecodedWidth() && bitmap.getHeight() == getDecodedHeight());
+        }
+
+        /**
+         * Returns the width of this tile, after it was decoded. The rounding
+         * matches the <tt>BitmapRegionDecoder</tt>.
+         */
+        private int getDecodedWidth() {
+            return Math.max((mRight - mLeft) / mSampleSize, 1);
+        }
+
+        /**
+         * Returns the height of this tile, after it was decoded. The rounding
+         * matches the <tt>BitmapRegionDecoder</tt>.
+         */
+        private int getDecodedHeight() {
+            return Math.max((mBottom - mTop) / mSampleSize, 1);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(mImage) * 31 + mSampleSize) * 31 + mLeft) * 31 + mTop;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+
+            if (object instanceof Tile) {
+                final Tile tile = (Tile)object;
+                return (mImage == tile.mImage && mSampleSize == tile.mSampleSize && mLeft == tile.mLeft && mTop == tile.mTop);
+            }
+
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(80).append("Tile { sampleSize = ").append(mSampleSize)
+                .append(", region = [").append(mLeft).append(", ").append(mTop).append(", ").append(mRight).append(", ").append(mBottom)
+                .append("] }").toString();
+        }
+    }
+}
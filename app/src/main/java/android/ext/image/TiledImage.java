@@ -0,0 +1,56 @@
+package android.ext.image;
+
+import android.graphics.BitmapRegionDecoder;
+
+/**
+ * Class <tt>TiledImage</tt> holds a {@link BitmapRegionDecoder} of a large image.
+ * The image pixels are not decoded, the visible tiles of the image are decoded
+ * by the {@link TileLoader} when the {@link TiledImageDrawable} draws it.
+ * @author Garfield
+ */
+public final class TiledImage {
+    /* package */ final int mWidth;
+    /* package */ final int mHeight;
+    /* package */ final BitmapRegionDecoder mDecoder;
+
+    /**
+     * Constructor
+     * @param decoder The {@link BitmapRegionDecoder} of the image.
+     * @param width The original width of the image.
+     * @param height The original height of the image.
+     */
+    public TiledImage(BitmapRegionDecoder decoder, int width, int height) {
+        mWidth   = width;
+        mHeight  = height;
+        mDecoder = decoder;
+    }
+
+    /**
+     * Returns the original width of this image.
+     * @return The width in pixels.
+     */
+    public final int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the original height of this image.
+     * @return The height in pixels.
+     */
+    public final int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Frees up the memory associated with this image. After calling this
+     * method, the tiles of this image can no longer be decoded.
+     */
+    public final void recycle() {
+        mDecoder.recycle();
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(64).append("TiledImage { width = ").append(mWidth).append(", height = ").append(mHeight).append(" }").toString();
+    }
+}
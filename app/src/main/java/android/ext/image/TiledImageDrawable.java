@@ -0,0 +1,204 @@
+package android.ext.image;
+
+import android.ext.content.AsyncLoader.Binder;
+import android.ext.image.TileLoader.Tile;
+import android.ext.util.DebugUtils;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.UiThread;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Class <tt>TiledImageDrawable</tt> draws a {@link TiledImage}. Only the visible tiles
+ * are decoded at the sample level of the current scale of the canvas, the tiles are
+ * decoded by the {@link TileLoader}. While a tile is decoding, the coarser tile which
+ * is already cached is drawn instead of it. The tiles which are no longer visible are
+ * cancelled.
+ * @author Garfield
+ */
+public class TiledImageDrawable extends Drawable implements Binder<Tile, Object, Bitmap> {
+    private final Paint mPaint;
+    private final TiledImage mImage;
+    private final TileLoader mLoader;
+    private final int mMaxSampleSize;
+
+    private final Rect mSrcRect;
+    private final RectF mDstRect;
+    private final Rect mClipBounds;
+    private final Matrix mMatrix;
+
+    private Set<Tile> mVisibleTiles;
+    private Set<Tile> mPendingTiles;
+
+    /**
+     * Constructor
+     * @param loader The {@link TileLoader} to load the tiles.
+     * @param image The {@link TiledImage} to draw.
+     */
+    public TiledImageDrawable(TileLoader loader, TiledImage image) {
+        DebugUtils.__checkError(loader == null || image == null, "Invalid parameters - loader == null || image == null");
+        mImage  = image;
+        mLoader = loader;
+        mMaxSampleSize = Integer.highestOneBit(Math.max(Math.max(image.mWidth, image.mHeight) / TileLoader.TILE_SIZE, 1));
+
+        mSrcRect = new Rect();
+        mDstRect = new RectF();
+        mClipBounds = new Rect();
+        mMatrix = new Matrix();
+        mPaint  = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+        mVisibleTiles = new HashSet<Tile>();
+        mPendingTiles = new HashSet<Tile>();
+    }
+
+    /**
+     * Returns the {@link TiledImage} associated with this drawable.
+     * @return The <tt>TiledImage</tt>.
+     */
+    public final TiledImage getImage() {
+        return mImage;
+    }
+
+    /**
+     * Cancels the loading tiles and removes all tiles of the image from the tile
+     * cache. Typically called when this drawable is no longer used.
+     */
+    @UiThread
+    public void release() {
+        cancelTiles(mPendingTiles);
+        mLoader.removeTiles(mImage);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final Rect bounds = getBounds();
+        if (bounds.isEmpty() || !canvas.getClipBounds(mClipBounds) || !mClipBounds.intersect(bounds)) {
+            cancelTiles(mPendingTiles);
+            return;
+        }
+
+        // Computes the sample size of the current scale.
+        final float scaleX = (float)mImage.mWidth / bounds.width();
+        final float scaleY = (float)mImage.mHeight / bounds.height();
+        canvas.getMatrix(mMatrix);
+        final float scale  = Math.max(scaleX, scaleY) / Math.max(mMatrix.mapRadius(1.0f), Float.MIN_NORMAL);
+        final int sampleSize = Math.min(Integer.highestOneBit(Math.max((int)scale, 1)), mMaxSampleSize);
+
+        // Computes the visible tiles.
+        final int tileSize = TileLoader.TILE_SIZE * sampleSize;
+        final int left   = Math.max((int)((mClipBounds.left - bounds.left) * scaleX) / tileSize, 0);
+        final int top    = Math.max((int)((mClipBounds.top - bounds.top) * scaleY) / tileSize, 0);
+        final int right  = Math.min((int)Math.ceil((mClipBounds.right - bounds.left) * scaleX / tileSize), (mImage.mWidth + tileSize - 1) / tileSize);
+        final int bottom = Math.min((int)Math.ceil((mClipBounds.bottom - bounds.top) * scaleY / tileSize), (mImage.mHeight + tileSize - 1) / tileSize);
+
+        // Draws the visible tiles, loads the tiles which are not cached.
+        for (int row = top; row < bottom; ++row) {
+            for (int column = left; column < right; ++column) {
+                final Tile tile = new Tile(mImage, sampleSize, column, row);
+                final Bitmap bitmap = mLoader.getCache().get(tile);
+                if (bitmap != null) {
+                    drawTile(canvas, bounds, tile, bitmap, null, scaleX, scaleY);
+                } else {
+                    drawCoarseTile(canvas, bounds, tile, scaleX, scaleY);
+                    mVisibleTiles.add(tile);
+                    mLoader.loadTile(tile, this);
+                }
+            }
+        }
+
+        // Cancels the loading tiles which are no longer visible.
+        mPendingTiles.removeAll(mVisibleTiles);
+        cancelTiles(mPendingTiles);
+
+        final Set<Tile> tiles = mPendingTiles;
+        mPendingTiles = mVisibleTiles;
+        mVisibleTiles = tiles;
+    }
+
+    @Override
+    public void bindValue(Tile tile, Object[] params, Object target, Bitmap bitmap, int state) {
+        if (bitmap != null && (state & STATE_LOAD_FROM_BACKGROUND) != 0) {
+            mPendingTiles.remove(tile);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mImage.mWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mImage.mHeight;
+    }
+
+    @Override
+    public int getAlpha() {
+        return mPaint.getAlpha();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (mPaint.getAlpha() != alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public ColorFilter getColorFilter() {
+        return mPaint.getColorFilter();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        // The tiles may be not loaded.
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    /**
+     * Draws the cached coarser tile which covers the <em>tile</em>, if exists.
+     */
+    private void drawCoarseTile(Canvas canvas, Rect bounds, Tile tile, float scaleX, float scaleY) {
+        for (int sampleSize = tile.mSampleSize << 1; sampleSize <= mMaxSampleSize; sampleSize <<= 1) {
+            final int tileSize = TileLoader.TILE_SIZE * sampleSize;
+            final Tile coarseTile = new Tile(mImage, sampleSize, tile.mLeft / tileSize, tile.mTop / tileSize);
+            final Bitmap bitmap = mLoader.getCache().get(coarseTile);
+            if (bitmap != null) {
+                mSrcRect.set((tile.mLeft - coarseTile.mLeft) / sampleSize, (tile.mTop - coarseTile.mTop) / sampleSize, (tile.mRight - coarseTile.mLeft + sampleSize - 1) / sampleSize, (tile.mBottom - coarseTile.mTop + sampleSize - 1) / sampleSize);
+                mSrcRect.intersect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+                drawTile(canvas, bounds, tile, bitmap, mSrcRect, scaleX, scaleY);
+                break;
+            }
+        }
+    }
+
+    private void drawTile(Canvas canvas, Rect bounds, Tile tile, Bitmap bitmap, Rect src, float scaleX, float scaleY) {
+        mDstRect.set(bounds.left + tile.mLeft / scaleX, bounds.top + tile.mTop / scaleY, bounds.left + tile.mRight / scaleX, bounds.top + tile.mBottom / scaleY);
+        canvas.drawBitmap(bitmap, src, mDstRect, mPaint);
+    }
+
+    private void cancelTiles(Set<Tile> tiles) {
+        if (tiles.size() > 0) {
+            for (Tile tile : tiles) {
+                mLoader.cancelTask(tile, false);
+            }
+
+            tiles.clear();
+        }
+    }
+}
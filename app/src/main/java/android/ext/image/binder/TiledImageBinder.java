@@ -0,0 +1,47 @@
+package android.ext.image.binder;
+
+import android.ext.content.AsyncLoader.Binder;
+import android.ext.image.ImageModule;
+import android.ext.image.TileLoader;
+import android.ext.image.TiledImage;
+import android.ext.image.TiledImageDrawable;
+import android.ext.util.DebugUtils;
+import android.graphics.drawable.Drawable;
+import android.widget.ImageView;
+
+/**
+ * Class <tt>TiledImageBinder</tt> converts a {@link TiledImage} to a {@link TiledImageDrawable}
+ * and bind it to the {@link ImageView}. The previous <tt>TiledImageDrawable</tt> of the
+ * <tt>ImageView</tt> is released when the new image bind to it.
+ * @author Garfield
+ */
+public class TiledImageBinder implements Binder<Object, Object, Object> {
+    /**
+     * The {@link TileLoader} to load the tiles.
+     */
+    protected final TileLoader mLoader;
+
+    /**
+     * Constructor
+     * @param loader The {@link TileLoader} to load the tiles.
+     */
+    public TiledImageBinder(TileLoader loader) {
+        DebugUtils.__checkError(loader == null, "Invalid parameter - loader == null");
+        mLoader = loader;
+    }
+
+    @Override
+    public void bindValue(Object uri, Object[] params, Object target, Object value, int state) {
+        final ImageView view = (ImageView)target;
+        final Drawable oldDrawable = view.getDrawable();
+        if (oldDrawable instanceof TiledImageDrawable && ((TiledImageDrawable)oldDrawable).getImage() != value) {
+            ((TiledImageDrawable)oldDrawable).release();
+        }
+
+        if (value instanceof TiledImage) {
+            view.setImageDrawable(new TiledImageDrawable(mLoader, (TiledImage)value));
+        } else if (value == null && (state & STATE_LOAD_FROM_BACKGROUND) == 0) {
+            ImageModule.setPlaceholder(view, params);
+        }
+    }
+}
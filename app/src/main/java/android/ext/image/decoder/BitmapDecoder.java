@@ -1,6 +1,7 @@
 package android.ext.image.decoder;
 
 import static android.ext.image.AbsImageLoader.FLAG_DUMP_OPTIONS;
+import android.annotation.TargetApi;
 import android.ext.cache.BitmapPool;
 import android.ext.image.AbsImageDecoder;
 import android.ext.image.ImageModule;
@@ -34,13 +35,25 @@ public class BitmapDecoder<Image> extends AbsImageDecoder<Image> {
         final Parameters parameters = getParameters(params);
         parameters.computeSampleSize(target, opts);
 
-        // Retrieves the bitmap from bitmap pool to reuse it.
-        if (Build.VERSION.SDK_INT < 26 || opts.inPreferredConfig != Config.HARDWARE) {
-            final BitmapPool bitmapPool = mModule.getBitmapPool();
-            if (bitmapPool != null) {
-                opts.inBitmap = bitmapPool.get(parameters.computeByteCount(opts));
-                DebugUtils.__checkDebug(opts.inBitmap != null, "BitmapDecoder", "decodeBitmap will attempt to reuse the " + opts.inBitmap);
+        // Decodes the image pixels to HARDWARE directly, If the config is HARDWARE.
+        if (Build.VERSION.SDK_INT >= 26 && opts.inPreferredConfig == Config.HARDWARE) {
+            final Bitmap bitmap = decodeHardware(uri, opts, flags);
+            if (bitmap != null) {
+                BitmapDecoder.__checkBitmap(bitmap, opts);
+                return (Image)bitmap;
             }
+
+            // Decodes the software bitmap, If the HARDWARE bitmap cannot be decoded.
+            opts.outConfig = null;
+            opts.inMutable = true;
+            opts.inPreferredConfig = Config.ARGB_8888;
+        }
+
+        // Retrieves the bitmap from bitmap pool to reuse it.
+        final BitmapPool bitmapPool = mModule.getBitmapPool();
+        if (bitmapPool != null) {
+            opts.inBitmap = bitmapPool.get(parameters.computeByteCount(opts));
+            DebugUtils.__checkDebug(opts.inBitmap != null, "BitmapDecoder", "decodeBitmap will attempt to reuse the " + opts.inBitmap);
         }
 
         // Decodes the image pixels.
@@ -61,6 +74,24 @@ public class BitmapDecoder<Image> extends AbsImageDecoder<Image> {
         return (Image)bitmap;
     }
 
+    /**
+     * Decodes a HARDWARE bitmap from the specified <em>uri</em>. The HARDWARE
+     * bitmap never reuses the bitmap of the {@link BitmapPool}.
+     * @return The bitmap, or <tt>null</tt> if the HARDWARE bitmap cannot be decoded.
+     */
+    @TargetApi(26)
+    private Bitmap decodeHardware(Object uri, Options opts, int flags) throws Exception {
+        try {
+            BitmapDecoder.__checkDumpOptions(opts, flags);
+            final Bitmap bitmap = decodeBitmap(uri, opts);
+            DebugUtils.__checkLogError(bitmap == null, "BitmapDecoder", "decodeHardware failed, fall back to software - " + uri);
+            return bitmap;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            DebugUtils.__checkLogError(true, "BitmapDecoder", "decodeHardware failed, fall back to software - " + e.getMessage());
+            return null;
+        }
+    }
+
     private static Parameters getParameters(Object[] params) {
         final Parameters parameters = ImageModule.getParameters(params);
         return (parameters != null ? parameters : Parameters.defaultParameters());
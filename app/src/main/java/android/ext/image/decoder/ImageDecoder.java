@@ -2,6 +2,7 @@ package android.ext.image.decoder;
 
 import android.ext.graphics.GIFImage;
 import android.ext.image.ImageModule;
+import android.ext.util.ByteArrayBuffer;
 import android.graphics.BitmapFactory.Options;
 
 /**
@@ -24,6 +25,16 @@ public final class ImageDecoder extends BitmapDecoder<Object> {
 
     @Override
     protected Object decodeImage(Object uri, Object target, Object[] params, int flags, Options opts) throws Exception {
-        return (GIF_MIME_TYPE.equalsIgnoreCase(opts.outMimeType) ? GIFImage.decode(mModule.mContext, uri, opts.inTempStorage) : super.decodeImage(uri, target, params, flags, opts));
+        if (!GIF_MIME_TYPE.equalsIgnoreCase(opts.outMimeType)) {
+            return super.decodeImage(uri, target, params, flags, opts);
+        } else if (uri instanceof byte[]) {
+            final byte[] data = (byte[])uri;
+            return GIFImage.decode(data, 0, data.length);
+        } else if (uri instanceof ByteArrayBuffer) {
+            final ByteArrayBuffer data = (ByteArrayBuffer)uri;
+            return GIFImage.decode(data.array(), 0, data.size());
+        } else {
+            return GIFImage.decode(mModule.mContext, uri, opts.inTempStorage);
+        }
     }
 }
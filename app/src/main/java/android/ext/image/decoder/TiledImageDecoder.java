@@ -0,0 +1,59 @@
+package android.ext.image.decoder;
+
+import android.ext.image.AbsImageDecoder;
+import android.ext.image.ImageModule;
+import android.ext.image.TiledImage;
+import android.ext.util.ByteArrayBuffer;
+import android.ext.util.UriUtils;
+import android.graphics.BitmapFactory.Options;
+import android.graphics.BitmapRegionDecoder;
+import android.util.AttributeSet;
+import java.io.InputStream;
+
+/**
+ * Class <tt>TiledImageDecoder</tt> used to decode the image data to a {@link TiledImage}.
+ * The image pixels are not decoded, this decoder creates a {@link BitmapRegionDecoder}
+ * to decode the visible tiles of the very large image on demand.
+ * <h3>Usage</h3>
+ * <p>Here is a xml resource example:</p><pre>
+ * &lt;ImageLoader xmlns:android="http://schemas.android.com/apk/res/android"
+ *     class="ImageLoader"&gt;
+ *     &lt;TiledImageDecoder /&gt;
+ * &lt;/ImageLoader&gt;</pre>
+ * @author Garfield
+ */
+public class TiledImageDecoder extends AbsImageDecoder<Object> {
+    /**
+     * Constructor
+     * @param module The {@link ImageModule}.
+     * @see #TiledImageDecoder(ImageModule, AttributeSet)
+     */
+    public TiledImageDecoder(ImageModule module) {
+        super(module);
+    }
+
+    /**
+     * Constructor
+     * @param module The {@link ImageModule}.
+     * @param attrs The attributes of the XML tag that is inflating the data.
+     * @see #TiledImageDecoder(ImageModule)
+     */
+    public TiledImageDecoder(ImageModule module, AttributeSet attrs) {
+        super(module);
+    }
+
+    @Override
+    protected Object decodeImage(Object uri, Object target, Object[] params, int flags, Options opts) throws Exception {
+        if (uri instanceof byte[]) {
+            final byte[] data = (byte[])uri;
+            return new TiledImage(BitmapRegionDecoder.newInstance(data, 0, data.length, false), opts.outWidth, opts.outHeight);
+        } else if (uri instanceof ByteArrayBuffer) {
+            final ByteArrayBuffer data = (ByteArrayBuffer)uri;
+            return new TiledImage(BitmapRegionDecoder.newInstance(data.array(), 0, data.size(), false), opts.outWidth, opts.outHeight);
+        }
+
+        try (final InputStream is = UriUtils.openInputStream(mModule.mContext, uri)) {
+            return new TiledImage(BitmapRegionDecoder.newInstance(is, false), opts.outWidth, opts.outHeight);
+        }
+    }
+}
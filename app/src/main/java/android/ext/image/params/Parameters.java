@@ -79,6 +79,20 @@ public class Parameters {
         return (int)((float)opts.outWidth / opts.inSampleSize + 0.5f) * (int)((float)opts.outHeight / opts.inSampleSize + 0.5f) * getBytesPerPixel(opts);
     }
 
+    /**
+     * Appends the key of this parameters to the specified <em>key</em>. The images
+     * decoded with the same key are considered the same size. The default implementation
+     * appends the class name and the {@link #value}. Subclasses should override this
+     * method if the decoded size depends on the other states.
+     * @param target May be <tt>null</tt>. The target to compute.
+     * @param key The <tt>StringBuilder</tt> to append.
+     * @return The <em>key</em>.
+     */
+    @WorkerThread
+    public StringBuilder appendKey(Object target, StringBuilder key) {
+        return key.append(getClass().getName()).append(':').append(value);
+    }
+
     public void dump(Printer printer, StringBuilder result) {
         printer.println(result.append(getClass().getSimpleName())
             .append(" { sampleSize = ").append(value)
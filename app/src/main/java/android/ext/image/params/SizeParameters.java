@@ -59,11 +59,41 @@ public class SizeParameters extends Parameters {
         a.recycle();
     }
 
+    /**
+     * Returns the minimum width to decode.
+     * @return The minimum width in pixels.
+     */
+    public final int getMinWidth() {
+        return minWidth;
+    }
+
+    /**
+     * Returns the minimum height to decode.
+     * @return The minimum height in pixels.
+     */
+    public final int getMinHeight() {
+        return (int)value;
+    }
+
     @Override
     public int computeByteCount(Options opts) {
         return computeByteCountImpl(opts);
     }
 
+    /**
+     * Appends the size to decode, the size of the <em>target</em> is included.
+     */
+    @Override
+    public StringBuilder appendKey(Object target, StringBuilder key) {
+        final int minHeight = (int)value;
+        if (target instanceof View) {
+            final View view = (View)target;
+            return super.appendKey(target, key).append(':').append(Math.max(view.getWidth(), minWidth)).append('x').append(Math.max(view.getHeight(), minHeight));
+        } else {
+            return super.appendKey(target, key).append(':').append(minWidth).append('x').append(minHeight);
+        }
+    }
+
     @Override
     public void computeSampleSize(Object target, Options opts) {
         /*
@@ -0,0 +1,135 @@
+package android.ext.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class <tt>LatencyHistogram</tt> records the latencies into the fixed exponential
+ * buckets. The bucket <tt>0</tt> holds the latencies less than 1 millisecond, the
+ * bucket <tt>i</tt> holds the latencies in range [2<sup>i-1</sup>, 2<sup>i</sup>)
+ * milliseconds and the last bucket holds all the larger latencies. Recording a
+ * latency costs two atomic increments. This class is thread-safely.
+ * @author Garfield
+ */
+public final class LatencyHistogram {
+    /**
+     * The number of buckets of the histogram.
+     */
+    public static final int BUCKET_COUNT = 16;
+
+    private final AtomicLong mTotalTime;
+    private final AtomicLongArray mCounts;
+
+    /**
+     * Constructor
+     */
+    public LatencyHistogram() {
+        mTotalTime = new AtomicLong();
+        mCounts = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /**
+     * Records the specified <em>latency</em> into this histogram.
+     * @param latency The latency in nanoseconds.
+     */
+    public final void record(long latency) {
+        final long millis = latency / 1000000;
+        final int index = (millis > 0 ? Math.min(64 - Long.numberOfLeadingZeros(millis), BUCKET_COUNT - 1) : 0);
+        mCounts.incrementAndGet(index);
+        mTotalTime.addAndGet(latency);
+    }
+
+    /**
+     * Returns the total time of all recorded latencies in nanoseconds.
+     * @return The total time in nanoseconds.
+     */
+    public final long getTotalTime() {
+        return mTotalTime.get();
+    }
+
+    /**
+     * Returns a copy of the number of recorded latencies in each bucket.
+     * @return An array of length {@link #BUCKET_COUNT}.
+     */
+    public final long[] getCounts() {
+        final long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = mCounts.get(i);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Resets all buckets of this histogram to zero.
+     */
+    public final void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            mCounts.set(i, 0);
+        }
+
+        mTotalTime.set(0);
+    }
+
+    /**
+     * Returns the total number of the specified <em>counts</em>.
+     * @param counts The counts, returned earlier by {@link #getCounts()}.
+     * @return The total number of recorded latencies.
+     */
+    public static long count(long[] counts) {
+        long result = 0;
+        for (long count : counts) {
+            result += count;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of the bucket that
+     * contains the specified <em>percentile</em> of the <em>counts</em>.
+     * @param counts The counts, returned earlier by {@link #getCounts()}.
+     * @param percentile The percentile in range [0 - 1.0].
+     * @return The latency in milliseconds, <tt>0</tt> if the <em>counts</em>
+     * is empty, or {@link Long#MAX_VALUE} if the percentile falls into the
+     * last bucket.
+     */
+    public static long percentile(long[] counts, float percentile) {
+        DebugUtils.__checkError(percentile < 0 || percentile > 1.0f, "Invalid parameter - percentile(" + percentile + ") out of range [0 - 1.0]");
+        final long total = count(counts);
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = (long)Math.ceil(total * percentile);
+        long result = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            if ((result += counts[i]) >= rank) {
+                return (i < BUCKET_COUNT - 1 ? (1L << i) : Long.MAX_VALUE);
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Appends the summary of the specified <em>counts</em> to <em>out</em>.
+     * @param out The <tt>StringBuilder</tt> to append.
+     * @param counts The counts, returned earlier by {@link #getCounts()}.
+     * @param totalTime The total time in nanoseconds, returned earlier by {@link #getTotalTime()}.
+     * @return The <em>out</em>.
+     */
+    public static StringBuilder toString(StringBuilder out, long[] counts, long totalTime) {
+        final long count = count(counts);
+        return out.append("[ count = ").append(count)
+            .append(", avg = ").append(count > 0 ? totalTime / count / 1000 : 0).append("us")
+            .append(", p50 < ").append(toString(percentile(counts, 0.5f)))
+            .append(", p90 < ").append(toString(percentile(counts, 0.9f)))
+            .append(", p99 < ").append(toString(percentile(counts, 0.99f)))
+            .append(" ]");
+    }
+
+    private static String toString(long millis) {
+        return (millis == Long.MAX_VALUE ? "inf" : millis + "ms");
+    }
+}
@@ -3,6 +3,7 @@ package android.ext.widget;
 import static android.support.v7.widget.RecyclerView.NO_POSITION;
 import android.ext.cache.ArrayMapCache;
 import android.ext.cache.Cache;
+import android.ext.cache.IntLruCache;
 import android.ext.cache.SimpleLruCache;
 import android.ext.util.ArrayUtils;
 import android.ext.util.DebugUtils;
@@ -181,7 +182,7 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
 
         E previous = null;
         final long combinedPosition = getPageForPosition(position);
-        final List<E> page = mPageCache.get(getOriginalPage(combinedPosition));
+        final List<E> page = getCachedPage(getOriginalPage(combinedPosition));
         if (page != null) {
             previous = page.set((int)combinedPosition, value);
             postNotifyItemRangeChanged(position, 1, payload);
@@ -204,7 +205,7 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
         DebugUtils.__checkUIThread("peekItem");
         DebugUtils.__checkError(position < 0 || position >= mItemCount, "Invalid parameter - position out of bounds [ position = " + position + ", itemCount = " + mItemCount + " ]");
         final long combinedPosition = getPageForPosition(position);
-        final List<E> page = mPageCache.get(getOriginalPage(combinedPosition));
+        final List<E> page = getCachedPage(getOriginalPage(combinedPosition));
         return (page != null ? page.get((int)combinedPosition) : null);
     }
 
@@ -267,7 +268,7 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
         final int size = ArrayUtils.getSize(page);
         if (size > 0) {
             DebugUtils.__checkDebug(true, "PageAdapter", "setPage - pageIndex = " + pageIndex + ", startPosition = " + getPositionForPage(pageIndex) + ", size = " + size);
-            mPageCache.put(pageIndex, (List<E>)page);
+            putCachedPage(pageIndex, (List<E>)page);
             postNotifyItemRangeChanged(getPositionForPage(pageIndex), size, payload);
         }
     }
@@ -324,6 +325,8 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
             dump(printer, ((ArrayMapCache<Integer, List<E>>)mPageCache).entrySet());
         } else if (mPageCache instanceof SimpleLruCache) {
             dump(printer, ((SimpleLruCache<Integer, List<E>>)mPageCache).snapshot().entrySet());
+        } else if (mPageCache instanceof IntLruCache) {
+            dump(printer, ((IntLruCache<List<E>>)mPageCache).snapshot().entrySet());
         }
     }
 
@@ -372,7 +375,7 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
     @UiThread
     @SuppressWarnings("unchecked")
     private List<E> getPage(int pageIndex) {
-        List<E> page = mPageCache.get(pageIndex);
+        List<E> page = getCachedPage(pageIndex);
         if (page != null || mLoadStates.get(pageIndex)) {
             return page;
         }
@@ -394,12 +397,34 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
         if (ArrayUtils.getSize(page) > 0) {
             // Clears the page loading state.
             mLoadStates.clear(pageIndex);
-            mPageCache.put(pageIndex, page);
+            putCachedPage(pageIndex, page);
         }
 
         return page;
     }
 
+    /**
+     * Returns the page from the page cache, without boxing the <em>pageIndex</em>
+     * if the page cache is an {@link IntLruCache}.
+     */
+    @SuppressWarnings("unchecked")
+    private List<E> getCachedPage(int pageIndex) {
+        return (mPageCache instanceof IntLruCache ? ((IntLruCache<List<E>>)mPageCache).get(pageIndex) : mPageCache.get(pageIndex));
+    }
+
+    /**
+     * Puts the page into the page cache, without boxing the <em>pageIndex</em>
+     * if the page cache is an {@link IntLruCache}.
+     */
+    @SuppressWarnings("unchecked")
+    private void putCachedPage(int pageIndex, List<E> page) {
+        if (mPageCache instanceof IntLruCache) {
+            ((IntLruCache<List<E>>)mPageCache).put(pageIndex, page);
+        } else {
+            mPageCache.put(pageIndex, page);
+        }
+    }
+
     /**
      * Dump this page cache.
      */
@@ -552,7 +577,8 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
             }
 
             /**
-             * Sets the page {@link Cache} to store the loaded pages.
+             * Sets the page {@link Cache} to store the loaded pages. The {@link IntLruCache}
+             * is recommended, it never boxes the index of the page.
              * @param pageCache The page <tt>Cache</tt>.
              * @return This builder.
              */
@@ -591,9 +617,9 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
     }
 
     /**
-     * Class <tt>LruPageCache</tt> is an implementation of a {@link SimpleLruCache}.
+     * Class <tt>LruPageCache</tt> is an implementation of a {@link IntLruCache}.
      */
-    private static final class LruPageCache<E> extends SimpleLruCache<Integer, List<E>> {
+    private static final class LruPageCache<E> extends IntLruCache<List<E>> {
         private List<E> mInitialPage;
 
         /**
@@ -611,12 +637,12 @@ public abstract class PageAdapter<E, VH extends ViewHolder> extends BaseAdapter<
         }
 
         @Override
-        public List<E> get(Integer pageIndex) {
+        public List<E> get(int pageIndex) {
             return (pageIndex == 0 ? mInitialPage : super.get(pageIndex));
         }
 
         @Override
-        public List<E> put(Integer pageIndex, List<E> page) {
+        public List<E> put(int pageIndex, List<E> page) {
             if (pageIndex == 0) {
                 mInitialPage = page;
                 return null;
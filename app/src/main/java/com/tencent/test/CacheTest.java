@@ -0,0 +1,159 @@
+package com.tencent.test;
+
+import android.ext.cache.Cache;
+import android.ext.cache.ConcurrentLruCache;
+import android.ext.cache.LruCache;
+import android.ext.cache.StatsCounter;
+import android.ext.cache.TinyLfuCache;
+import android.ext.util.DebugUtils;
+import android.util.Log;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Replays a synthetic image feed trace against {@link LruCache} and {@link TinyLfuCache},
+ * the eviction policies of the <tt>LruBitmapCache</tt> and <tt>LfuBitmapCache</tt>, and
+ * checks the hit ratio of the <tt>TinyLfuCache</tt> is not lower than the <tt>LruCache</tt>.
+ * The trace mixes Zipf-distributed accesses of a hot set (avatars, icons) with long flings
+ * through one-time images. Each entry is sized 1, so the capacity is the number of entries.
+ * The same traces are used to measure the lock contention of the {@link ConcurrentLruCache}.
+ */
+public final class CacheTest {
+    private static final String TAG = "CacheTest";
+
+    private static final int HOT_KEY_COUNT = 2000;
+    private static final int CACHE_CAPACITY = 200;
+    private static final int ROUND_COUNT = 50;
+    private static final int BROWSE_LENGTH = 2000;
+    private static final int FLING_LENGTH  = 500;
+
+    private static final int[] THREAD_COUNTS = { 1, 4, 8 };
+    private static final int SEGMENT_COUNT = 8;
+    private static final int OPERATION_COUNT = 200000;
+
+    /**
+     * Runs the benchmark and logs the hit ratio of each cache.
+     * @return The hit ratios, <tt>[0]</tt> is the <tt>LruCache</tt>
+     * and <tt>[1]</tt> is the <tt>TinyLfuCache</tt>.
+     */
+    public static double[] compareHitRatio() {
+        final int[] trace = makeTrace(new Random(20201016));
+        final double lruHitRate = replay(new LruCache<Integer, Object>(CACHE_CAPACITY), trace);
+        final double lfuHitRate = replay(new TinyLfuCache<Integer, Object>(CACHE_CAPACITY), trace);
+
+        Log.i(TAG, "trace length = " + trace.length + ", cache capacity = " + CACHE_CAPACITY + ", LruCache hitRate = " + lruHitRate + ", TinyLfuCache hitRate = " + lfuHitRate);
+        DebugUtils.__checkError(lfuHitRate < lruHitRate, "The TinyLfuCache hitRate (" + lfuHitRate + ") is lower than the LruCache hitRate (" + lruHitRate + ")");
+        return new double[] { lruHitRate, lfuHitRate };
+    }
+
+    /**
+     * Runs the contention benchmark of the {@link LruCache} and the {@link ConcurrentLruCache}
+     * with 1, 4 and 8 threads, and logs the throughput of each cache. Each thread replays its
+     * own feed trace, a miss is followed by a put.
+     * @return The throughputs in operations per millisecond, <tt>[i][0]</tt> is the <tt>LruCache</tt>
+     * and <tt>[i][1]</tt> is the <tt>ConcurrentLruCache</tt> of the <em>i-th</em> thread count.
+     */
+    public static long[][] compareContention() {
+        // Warms up the both caches, so the first measurement is not skewed by the JIT.
+        final int[][] warmUpTraces = { makeTrace(new Random(20201016)) };
+        contend(new LruCache<Integer, Object>(CACHE_CAPACITY), warmUpTraces);
+        contend(new ConcurrentLruCache<Integer, Object>(SEGMENT_COUNT, () -> new LruCache<Integer, Object>(CACHE_CAPACITY / SEGMENT_COUNT)), warmUpTraces);
+
+        final long[][] result = new long[THREAD_COUNTS.length][];
+        for (int i = 0; i < THREAD_COUNTS.length; ++i) {
+            final int threadCount = THREAD_COUNTS[i];
+            final int[][] traces = new int[threadCount][];
+            for (int j = 0; j < threadCount; ++j) {
+                traces[j] = makeTrace(new Random(20201016 + j));
+            }
+
+            final long lruThroughput = contend(new LruCache<Integer, Object>(CACHE_CAPACITY), traces);
+            final long concurrentThroughput = contend(new ConcurrentLruCache<Integer, Object>(SEGMENT_COUNT, () -> new LruCache<Integer, Object>(CACHE_CAPACITY / SEGMENT_COUNT)), traces);
+            Log.i(TAG, "threads = " + threadCount + ", LruCache = " + lruThroughput + " ops/ms, ConcurrentLruCache = " + concurrentThroughput + " ops/ms");
+            result[i] = new long[] { lruThroughput, concurrentThroughput };
+        }
+
+        return result;
+    }
+
+    /**
+     * Replays each trace on its own thread against the <em>cache</em>.
+     * @return The total throughput in operations per millisecond.
+     */
+    private static long contend(Cache<Integer, Object> cache, int[][] traces) {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final Thread[] threads = new Thread[traces.length];
+        for (int i = 0; i < traces.length; ++i) {
+            final int[] trace = traces[i];
+            threads[i] = new Thread(() -> {
+                try {
+                    startSignal.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int j = 0; j < OPERATION_COUNT; ++j) {
+                    final Integer key = trace[j % trace.length];
+                    if (cache.get(key) == null) {
+                        cache.put(key, Boolean.TRUE);
+                    }
+                }
+            });
+
+            threads[i].start();
+        }
+
+        final long startTime = System.nanoTime();
+        startSignal.countDown();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+
+        return (long)OPERATION_COUNT * traces.length * 1000000 / Math.max(System.nanoTime() - startTime, 1);
+    }
+
+    private static double replay(Cache<Integer, Object> cache, int[] trace) {
+        final StatsCounter counter = new StatsCounter();
+        cache.setStatsCounter(counter);
+        for (int key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, Boolean.TRUE);
+            }
+        }
+
+        return counter.snapshot().hitRate();
+    }
+
+    private static int[] makeTrace(Random random) {
+        // Computes the cumulative weights of the Zipf distribution (s = 0.9).
+        final double[] weights = new double[HOT_KEY_COUNT];
+        double sum = 0;
+        for (int i = 0; i < HOT_KEY_COUNT; ++i) {
+            weights[i] = (sum += 1.0 / Math.pow(i + 1, 0.9));
+        }
+
+        final int[] trace = new int[ROUND_COUNT * (BROWSE_LENGTH + FLING_LENGTH)];
+        int index = 0, oneTimeKey = HOT_KEY_COUNT;
+        for (int round = 0; round < ROUND_COUNT; ++round) {
+            for (int i = 0; i < BROWSE_LENGTH; ++i) {
+                final int key = Arrays.binarySearch(weights, random.nextDouble() * sum);
+                trace[index++] = (key >= 0 ? key : -key - 1);
+            }
+
+            for (int i = 0; i < FLING_LENGTH; ++i) {
+                trace[index++] = oneTimeKey++;
+            }
+        }
+
+        return trace;
+    }
+
+    private CacheTest() {
+    }
+}
@@ -4,6 +4,7 @@ import android.app.Application;
 import android.content.pm.PackageInfo;
 import android.ext.cache.Cache;
 import android.ext.cache.FileCache;
+import android.ext.content.AsyncTask;
 import android.ext.content.Task;
 import android.ext.graphics.drawable.ImageDrawable;
 import android.ext.image.ImageLoader;
@@ -41,6 +42,13 @@ public final class MainApplication extends Application {
                 .detectNetwork()
                 .penaltyLog()
                 .build());
+
+            // Checks the TinyLfuCache is not worse than the LruCache on the feed trace,
+            // then measures the lock contention of the LruCache and ConcurrentLruCache.
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+                CacheTest.compareHitRatio();
+                CacheTest.compareContention();
+            });
         }
     }
 